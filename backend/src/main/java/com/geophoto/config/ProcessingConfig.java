@@ -0,0 +1,129 @@
+package com.geophoto.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processing Configuration
+ * Bounded worker pools for background photo post-processing, image resizing,
+ * sprite sheet builds and photo tile rebuilds
+ */
+@Configuration
+@EnableScheduling
+public class ProcessingConfig {
+    
+    @Value("${app.processing.workers:2}")
+    private int workers;
+    
+    @Value("${app.upload.batch-parallelism:4}")
+    private int batchParallelism;
+    
+    @Value("${app.image.resize.threads:2}")
+    private int resizeThreads;
+    
+    @Value("${app.image.resize.queue-capacity:32}")
+    private int resizeQueueCapacity;
+    
+    @Value("${app.sprites.read-parallelism:8}")
+    private int spriteReadThreads;
+    
+    @Value("${app.sprites.max-concurrent-builds:2}")
+    private int spriteMaxConcurrentBuilds;
+    
+    /**
+     * Worker pool for the photo processing queue.
+     * The queue itself lives in MongoDB, so the executor only ever holds
+     * as many tasks as there are workers.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor photoProcessingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(workers);
+        executor.setThreadNamePrefix("photo-processing-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Pool decoding and resizing images for ?w=&h= requests.
+     * Each decode holds a full bitmap, so the thread count bounds the heap
+     * used; requests beyond the queue are rejected instead of piling up.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor imageResizeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(resizeThreads);
+        executor.setMaxPoolSize(resizeThreads);
+        executor.setQueueCapacity(resizeQueueCapacity);
+        executor.setThreadNamePrefix("image-resize-");
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Pool reading thumbnails for sprite sheet builds, separate from batch
+     * ingest so large sheets cannot starve uploads. SpriteService caps the
+     * builds running at once and the reads each keeps in flight, so the
+     * queue never fills.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor spriteReadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(spriteReadThreads);
+        executor.setMaxPoolSize(spriteReadThreads);
+        executor.setQueueCapacity(spriteReadThreads * spriteMaxConcurrentBuilds);
+        executor.setThreadNamePrefix("sprite-read-");
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Single thread for the photo tile build on first start, so the scan
+     * does not occupy the common fork-join pool
+     */
+    @Bean
+    public ThreadPoolTaskExecutor photoTileExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("photo-tiles-");
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Executor for parallel ingest of batch uploads.
+     * Uses virtual threads when running on JDK 21+, a fixed pool otherwise;
+     * PhotoService bounds how many files of a batch run at once either way.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService photoIngestExecutor() {
+        if (Runtime.version().feature() >= 21) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to a platform thread pool
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(batchParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "photo-ingest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
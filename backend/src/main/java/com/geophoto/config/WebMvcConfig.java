@@ -1,7 +1,10 @@
 package com.geophoto.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -19,6 +22,33 @@ public class WebMvcConfig implements WebMvcConfigurer {
     @Value("${app.upload.dir}")
     private String uploadDir;
     
+    @Value("${app.streaming.threads:8}")
+    private int streamingThreads;
+    
+    @Value("${app.streaming.timeout-ms:300000}")
+    private long streamingTimeoutMs;
+    
+    /**
+     * Threads writing streamed responses (StreamingResponseBody)
+     * Defining our own executors switches off Spring Boot's default one, so
+     * streaming gets a bounded pool instead of a thread per request.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mvcAsyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamingThreads);
+        executor.setMaxPoolSize(streamingThreads);
+        executor.setThreadNamePrefix("mvc-stream-");
+        executor.initialize();
+        return executor;
+    }
+    
+    @Override
+    public void configureAsyncSupport(@NonNull AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcAsyncExecutor());
+        configurer.setDefaultTimeout(streamingTimeoutMs);
+    }
+    
     /**
      * Configure CORS to allow frontend (localhost:5173) to access the API
      * Note: CORS is also configured in SecurityConfig, this is a fallback
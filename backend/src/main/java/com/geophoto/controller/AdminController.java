@@ -0,0 +1,104 @@
+package com.geophoto.controller;
+
+import com.geophoto.dto.BackfillStatusResponse;
+import com.geophoto.dto.BlobCacheStatsResponse;
+import com.geophoto.dto.ImageResizeStatsResponse;
+import com.geophoto.dto.MessageResponse;
+import com.geophoto.service.BlobDiskCache;
+import com.geophoto.service.ImageResizeService;
+import com.geophoto.service.MetadataBackfillService;
+import com.geophoto.service.PhotoProcessingService;
+import com.geophoto.service.PhotoTileService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Admin Controller
+ * Maintenance endpoints, restricted to users with the ADMIN role
+ */
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminController {
+    
+    private final PhotoProcessingService photoProcessingService;
+    private final MetadataBackfillService metadataBackfillService;
+    private final PhotoTileService photoTileService;
+    private final BlobDiskCache blobDiskCache;
+    private final ImageResizeService imageResizeService;
+    
+    /**
+     * POST /api/admin/thumbnails/backfill
+     * Queue thumbnail generation for photos created before thumbnails existed
+     */
+    @PostMapping("/thumbnails/backfill")
+    public ResponseEntity<MessageResponse> backfillThumbnails() {
+        log.info("Starting thumbnail backfill");
+        long queued = photoProcessingService.requeueMissingThumbnails();
+        return ResponseEntity.accepted()
+                .body(new MessageResponse("Queued " + queued + " photos for thumbnail generation"));
+    }
+    
+    /**
+     * POST /api/admin/metadata/backfill
+     * Re-extract EXIF metadata of all existing photos, resumes a paused run
+     */
+    @PostMapping("/metadata/backfill")
+    public ResponseEntity<BackfillStatusResponse> startMetadataBackfill() {
+        log.info("Starting metadata backfill");
+        return ResponseEntity.accepted().body(metadataBackfillService.start());
+    }
+    
+    /**
+     * GET /api/admin/metadata/backfill
+     * Progress, throughput and remaining count of the metadata backfill
+     */
+    @GetMapping("/metadata/backfill")
+    public ResponseEntity<BackfillStatusResponse> getMetadataBackfillStatus() {
+        return ResponseEntity.ok(metadataBackfillService.getStatus());
+    }
+    
+    /**
+     * POST /api/admin/metadata/backfill/pause
+     * Pause the metadata backfill after the current batch
+     */
+    @PostMapping("/metadata/backfill/pause")
+    public ResponseEntity<BackfillStatusResponse> pauseMetadataBackfill() {
+        log.info("Pausing metadata backfill");
+        return ResponseEntity.ok(metadataBackfillService.pause());
+    }
+    
+    /**
+     * POST /api/admin/tiles/rebuild
+     * Recompute all photo_tiles aggregates from the photos collection
+     */
+    @PostMapping("/tiles/rebuild")
+    public ResponseEntity<MessageResponse> rebuildTiles() {
+        log.info("Rebuilding photo tiles");
+        long tiles = photoTileService.rebuild();
+        return ResponseEntity.ok(new MessageResponse("Rebuilt " + tiles + " photo tiles"));
+    }
+    
+    /**
+     * GET /api/admin/blob-cache
+     * Hit ratio, coalesced fetches and bytes kept off MongoDB by the local disk cache of images
+     */
+    @GetMapping("/blob-cache")
+    public ResponseEntity<BlobCacheStatsResponse> getBlobCacheStats() {
+        return ResponseEntity.ok(blobDiskCache.getStats());
+    }
+    
+    /**
+     * GET /api/admin/image-resize
+     * Renders, coalesced requests and current load of the image resize pool
+     */
+    @GetMapping("/image-resize")
+    public ResponseEntity<ImageResizeStatsResponse> getImageResizeStats() {
+        return ResponseEntity.ok(imageResizeService.getStats());
+    }
+}
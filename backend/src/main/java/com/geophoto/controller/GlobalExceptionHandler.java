@@ -8,6 +8,7 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -41,6 +42,18 @@ public class GlobalExceptionHandler {
                 .body(new MessageResponse(firstError));
     }
     
+    /**
+     * Handle multipart requests over spring.servlet.multipart limits
+     * Files over app.upload.max-file-size fail individually instead, only a
+     * request over the total size limit ends up here.
+     */
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<MessageResponse> handleMaxUploadSize(MaxUploadSizeExceededException ex) {
+        log.warn("Upload rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(new MessageResponse("Tổng dung lượng upload vượt quá giới hạn, hãy chia nhỏ lô ảnh"));
+    }
+    
     /**
      * Handle generic runtime exceptions
      */
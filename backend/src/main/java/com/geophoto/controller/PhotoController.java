@@ -1,20 +1,55 @@
 package com.geophoto.controller;
 
+import com.geophoto.dto.BatchUploadResponse;
+import com.geophoto.dto.ClustersResponse;
+import com.geophoto.dto.HeatmapResponse;
+import com.geophoto.dto.MarkersResponse;
+import com.geophoto.dto.NearbyPhotoDTO;
 import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.PhotoPageResponse;
+import com.geophoto.dto.PhotosWithinResponse;
+import com.geophoto.dto.ProcessingStatusResponse;
+import com.geophoto.dto.SpriteRequest;
+import com.geophoto.dto.SpriteResponse;
+import com.geophoto.dto.TimelineResponse;
 import com.geophoto.entity.User;
+import com.geophoto.service.BlobDiskCache;
+import com.geophoto.service.ImageResizeService;
+import com.geophoto.service.PhotoGeoService;
+import com.geophoto.service.PhotoListService;
 import com.geophoto.service.PhotoService;
+import com.geophoto.service.PhotoVersionService;
+import com.geophoto.service.SpriteService;
+import com.geophoto.util.BoundingBox;
+import com.geophoto.util.GridFsFileResource;
+import com.geophoto.util.MapTile;
+import com.geophoto.util.TimeRange;
+import com.geophoto.util.VectorTileEncoder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.lang.NonNull;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -29,7 +64,26 @@ import org.springframework.http.MediaType;
 @Slf4j
 public class PhotoController {
     
+    private static final Duration IMMUTABLE_MAX_AGE = Duration.ofDays(365);
+    
+    private static final Duration DERIVATIVE_MAX_AGE = Duration.ofDays(1);
+    
+    // Request attributes of Tomcat's sendfile support
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
     private final PhotoService photoService;
+    private final PhotoGeoService photoGeoService;
+    private final PhotoListService photoListService;
+    private final PhotoVersionService photoVersionService;
+    private final BlobDiskCache blobDiskCache;
+    private final ImageResizeService imageResizeService;
+    private final SpriteService spriteService;
+    
+    @Value("${app.upload.batch-max-files:100}")
+    private int batchMaxFiles;
     
     /**
      * Get current authenticated user
@@ -40,43 +94,363 @@ public class PhotoController {
     }
     
     /**
-     * GET /api/photos/image/{filename}
-     * Serve photo image from GridFS
+     * Conditional GET for views of the user's photo library
+     * The ETag covers user, library version, URL and Accept header, so an
+     * unchanged library is answered with 304 after one _id lookup in
+     * photo_versions, before any photo is read. Browsers revalidate every
+     * time (no-cache) and keep one copy per user (Vary).
+     */
+    private boolean isNotModified(ServletWebRequest request, User user) {
+        return isNotModified(request, user, photoVersionService.getVersion(user.getId()));
+    }
+    
+    /**
+     * Conditional GET with a version the caller already read, e.g. to pass on to the spatial index cache
+     */
+    private boolean isNotModified(ServletWebRequest request, User user, long version) {
+        HttpServletRequest servletRequest = request.getRequest();
+        HttpServletResponse response = request.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION + ", " + HttpHeaders.ACCEPT);
+        }
+        String variant = user.getId() + ":" + version
+                + ":" + servletRequest.getRequestURI() + "?" + servletRequest.getQueryString()
+                + ":" + servletRequest.getHeader(HttpHeaders.ACCEPT);
+        return request.checkNotModified(DigestUtils.md5DigestAsHex(variant.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * GET /api/photos/image/{filename}?w=&h=&fit=contain|cover&q=
+     * Serve photo image from GridFS, với ETag, 304 và Range (206); w/h/fit/q trả về bản JPEG đã thu nhỏ
      */
     @GetMapping("/image/{filename}")
-    public ResponseEntity<Resource> servePhoto(@PathVariable String filename) {
-        Resource file = photoService.getPhotoResource(filename);
-        if (file == null || !file.exists()) {
+    public ResponseEntity<Resource> servePhoto(
+            @PathVariable String filename,
+            @RequestParam(value = "w", required = false) Integer width,
+            @RequestParam(value = "h", required = false) Integer height,
+            @RequestParam(value = "fit", required = false) String fit,
+            @RequestParam(value = "q", required = false) Integer quality,
+            ServletWebRequest request) {
+        ImageResizeService.Variant variant = imageResizeService.parseVariant(width, height, fit, quality);
+        GridFsFileResource file = photoService.getPhotoResource(filename);
+        if (file == null) {
              return ResponseEntity.notFound().build();
         }
+        // Originals are never rewritten under a name, thumbnails are when a photo is reprocessed
+        CacheControl cacheControl = file.isDerivative()
+                ? CacheControl.maxAge(DERIVATIVE_MAX_AGE).cachePublic()
+                : CacheControl.maxAge(IMMUTABLE_MAX_AGE).cachePublic().immutable();
+        HttpServletResponse response = request.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        }
+        String etag = variant == null ? file.getEntityTag() : file.getEntityTag() + "-" + variant.getKey();
+        if (request.checkNotModified("\"" + etag + "\"", file.lastModified())) {
+            return null;
+        }
+        
+        String contentDisposition = "inline; filename=\"" + file.getFilename() + "\"";
+        String contentType = file.getContentType();
+        Resource body;
+        if (variant == null) {
+            // A range or HEAD request needs a few bytes at most, it must not wait for the whole file to be copied
+            HttpServletRequest servletRequest = request.getRequest();
+            boolean partial = servletRequest.getHeader(HttpHeaders.RANGE) != null
+                    || "HEAD".equals(servletRequest.getMethod());
+            Path cached = partial ? blobDiskCache.find(file.getFileId()) : blobDiskCache.get(file);
+            body = cached != null ? new FileSystemResource(cached) : file;
+        } else {
+            try {
+                body = imageResizeService.resize(file, variant);
+            } catch (TaskRejectedException e) {
+                log.warn("Image resize pool is full, rejecting {} {}", filename, variant.getKey());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .build();
+            }
+            contentType = ImageResizeService.CONTENT_TYPE;
+        }
+        if (body instanceof FileSystemResource cached && response != null && sendFile(request.getRequest(),
+                response, cached.getFile().toPath(), cached.getFile().length(), contentType, contentDisposition)) {
+            return null;
+        }
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFilename() + "\"")
-                .contentType(MediaType.IMAGE_JPEG) // We could try to detect type, but JPEG is safe default or we can store content type in DB
-                .body(file);
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                .contentType(MediaType.parseMediaType(contentType))
+                .body(body);
+    }
+    
+    /**
+     * Hand a whole cached file to the connector's sendfile (kernel copy to
+     * the socket), when it supports that; ranges and HEAD go through Spring
+     */
+    private boolean sendFile(HttpServletRequest request, HttpServletResponse response, Path path,
+                             long length, String contentType, String contentDisposition) {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))
+                || request.getHeader(HttpHeaders.RANGE) != null || !"GET".equals(request.getMethod())) {
+            return false;
+        }
+        response.setContentType(contentType);
+        response.setContentLengthLong(length);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        request.setAttribute(SENDFILE_FILENAME, path.toString());
+        request.setAttribute(SENDFILE_START, 0L);
+        request.setAttribute(SENDFILE_END, length);
+        return true;
+    }
+    
+    /**
+     * POST /api/photos/sprites
+     * Ghép thumbnail của nhiều ảnh thành một sprite sheet, trả về URL và vị trí từng ảnh
+     */
+    @PostMapping("/sprites")
+    public ResponseEntity<SpriteResponse> getSprite(@Valid @RequestBody SpriteRequest request) {
+        User currentUser = getCurrentUser();
+        try {
+            return ResponseEntity.ok(spriteService.getSprite(currentUser, request));
+        } catch (TaskRejectedException e) {
+            log.warn("Too many sprite builds running, rejecting sprite for user {}", currentUser.getUsername());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
     }
     
     /**
-     * GET /api/photos/with-gps
-     * Lấy tất cả ảnh có tọa độ GPS của user hiện tại
+     * GET /api/photos/with-gps?sort=uploadedAt|takenAt
+     * Lấy tất cả ảnh có tọa độ GPS của user hiện tại, trả về dạng stream
+     * (mảng JSON, hoặc NDJSON khi Accept: application/x-ndjson)
      */
     @GetMapping("/with-gps")
-    public ResponseEntity<List<PhotoDTO>> getPhotosWithGps() {
+    public ResponseEntity<StreamingResponseBody> getPhotosWithGps(
+            @RequestParam(value = "sort", defaultValue = "uploadedAt") String sort,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            ServletWebRequest request) {
         User currentUser = getCurrentUser();
+        if (isNotModified(request, currentUser)) {
+            return null;
+        }
         log.info("Fetching photos with GPS for user: {}", currentUser.getUsername());
-        List<PhotoDTO> photos = photoService.getPhotosWithGpsByUser(currentUser.getId());
-        return ResponseEntity.ok(photos);
+        return streamPhotos(currentUser.getId(), true, sort, accept);
+    }
+    
+    /**
+     * GET /api/photos/with-gps?limit=&cursor=&sort=uploadedAt|takenAt
+     * Lấy một trang ảnh có tọa độ GPS (phân trang theo cursor)
+     */
+    @GetMapping(value = "/with-gps", params = "limit")
+    public ResponseEntity<PhotoPageResponse> getPhotosWithGpsPage(
+            @RequestParam("limit") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "sort", defaultValue = "uploadedAt") String sort,
+            ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        if (isNotModified(request, currentUser)) {
+            return null;
+        }
+        return ResponseEntity.ok(photoListService.getPage(currentUser.getId(), true,
+                PhotoListService.SortField.fromParam(sort), cursor, limit));
+    }
+    
+    /**
+     * GET /api/photos/within?bbox=minLon,minLat,maxLon,maxLat&from=&to=
+     * Lấy ảnh của user hiện tại nằm trong khung nhìn bản đồ, lọc theo ngày chụp nếu có from/to
+     */
+    @GetMapping("/within")
+    public ResponseEntity<PhotosWithinResponse> getPhotosWithin(
+            @RequestParam("bbox") String bbox,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        long version = photoVersionService.getVersion(currentUser.getId());
+        if (isNotModified(request, currentUser, version)) {
+            return null;
+        }
+        BoundingBox box = BoundingBox.parse(bbox);
+        return ResponseEntity.ok(photoGeoService.findWithin(currentUser.getId(), version, box, TimeRange.parse(from, to), limit));
+    }
+    
+    /**
+     * GET /api/photos/clusters?bbox=minLon,minLat,maxLon,maxLat&zoom=&from=&to=
+     * Lấy các cụm ảnh trong khung nhìn theo mức zoom, ảnh riêng lẻ khi zoom gần
+     */
+    @GetMapping("/clusters")
+    public ResponseEntity<ClustersResponse> getClusters(
+            @RequestParam("bbox") String bbox,
+            @RequestParam("zoom") int zoom,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        long version = photoVersionService.getVersion(currentUser.getId());
+        if (isNotModified(request, currentUser, version)) {
+            return null;
+        }
+        BoundingBox box = BoundingBox.parse(bbox);
+        return ResponseEntity.ok(photoGeoService.findClusters(currentUser.getId(), version, box, TimeRange.parse(from, to), zoom));
+    }
+    
+    /**
+     * GET /api/photos/heatmap?bbox=minLon,minLat,maxLon,maxLat&zoom=&from=&to=
+     * Lấy lưới mật độ ảnh trong khung nhìn (mã hóa run-length, base64) để vẽ heatmap
+     */
+    @GetMapping("/heatmap")
+    public ResponseEntity<HeatmapResponse> getHeatmap(
+            @RequestParam("bbox") String bbox,
+            @RequestParam("zoom") int zoom,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        long version = photoVersionService.getVersion(currentUser.getId());
+        if (isNotModified(request, currentUser, version)) {
+            return null;
+        }
+        BoundingBox box = BoundingBox.parse(bbox);
+        return ResponseEntity.ok(photoGeoService.getHeatmap(currentUser.getId(), version, box, TimeRange.parse(from, to), zoom));
+    }
+    
+    /**
+     * GET /api/photos/timeline?bucket=day|month&bbox=&from=&to=
+     * Đếm số ảnh theo ngày hoặc tháng chụp (cho thanh trượt thời gian), tùy chọn trong khung nhìn
+     */
+    @GetMapping("/timeline")
+    public ResponseEntity<TimelineResponse> getTimeline(
+            @RequestParam(value = "bucket", defaultValue = "month") String bucket,
+            @RequestParam(value = "bbox", required = false) String bbox,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        if (isNotModified(request, currentUser)) {
+            return null;
+        }
+        BoundingBox box = bbox == null ? null : BoundingBox.parse(bbox);
+        return ResponseEntity.ok(photoGeoService.getTimeline(currentUser.getId(),
+                PhotoGeoService.TimelineBucket.fromParam(bucket), box, TimeRange.parse(from, to)));
+    }
+    
+    /**
+     * GET /api/photos/near?lat=&lon=&k=&maxMeters=
+     * Lấy các ảnh gần một điểm nhất, sắp xếp theo khoảng cách
+     */
+    @GetMapping("/near")
+    public ResponseEntity<List<NearbyPhotoDTO>> getPhotosNear(
+            @RequestParam("lat") double latitude,
+            @RequestParam("lon") double longitude,
+            @RequestParam(value = "k", required = false) Integer k,
+            @RequestParam(value = "maxMeters", required = false) Double maxMeters) {
+        User currentUser = getCurrentUser();
+        return ResponseEntity.ok(photoGeoService.findNear(currentUser.getId(),
+                photoVersionService.getVersion(currentUser.getId()), latitude, longitude, k, maxMeters, null));
+    }
+    
+    /**
+     * GET /api/photos/{id}/nearby?k=&maxMeters=
+     * Lấy các ảnh khác được chụp gần ảnh này, sắp xếp theo khoảng cách
+     */
+    @GetMapping("/{id}/nearby")
+    public ResponseEntity<List<NearbyPhotoDTO>> getNearbyPhotos(
+            @PathVariable @NonNull String id,
+            @RequestParam(value = "k", required = false) Integer k,
+            @RequestParam(value = "maxMeters", required = false) Double maxMeters) {
+        User currentUser = getCurrentUser();
+        return ResponseEntity.ok(photoGeoService.findNearbyPhoto(currentUser.getId(),
+                photoVersionService.getVersion(currentUser.getId()), id, k, maxMeters));
+    }
+    
+    /**
+     * GET /api/photos/markers?bbox=minLon,minLat,maxLon,maxLat
+     * Lấy marker dạng cột (id, thumbnail, tọa độ nén delta) cho bản đồ;
+     * CBOR khi Accept: application/cbor, JSON trong các trường hợp còn lại
+     */
+    @GetMapping(value = "/markers", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<MarkersResponse> getMarkers(@RequestParam(value = "bbox", required = false) String bbox, ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        long version = photoVersionService.getVersion(currentUser.getId());
+        if (isNotModified(request, currentUser, version)) {
+            return null;
+        }
+        BoundingBox box = bbox == null ? null : BoundingBox.parse(bbox);
+        return ResponseEntity.ok(photoGeoService.getMarkers(currentUser.getId(), version, box));
+    }
+    
+    /**
+     * GET /api/photos/tiles/{z}/{x}/{y}.mvt?from=&to=
+     * Lấy vector tile (Mapbox Vector Tile) chứa điểm ảnh và cụm ảnh của user hiện tại
+     */
+    @GetMapping("/tiles/{z}/{x}/{y}.mvt")
+    public ResponseEntity<byte[]> getVectorTile(
+            @PathVariable int z, @PathVariable int x, @PathVariable int y,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        long version = photoVersionService.getVersion(currentUser.getId());
+        if (isNotModified(request, currentUser, version)) {
+            return null;
+        }
+        byte[] tile = photoGeoService.renderVectorTile(currentUser.getId(), version, new MapTile(z, x, y),
+                TimeRange.parse(from, to));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(VectorTileEncoder.CONTENT_TYPE))
+                .body(tile);
     }
     
     /**
-     * GET /api/photos
-     * Lấy tất cả ảnh của user hiện tại
+     * GET /api/photos?sort=uploadedAt|takenAt
+     * Lấy tất cả ảnh của user hiện tại, trả về dạng stream
+     * (mảng JSON, hoặc NDJSON khi Accept: application/x-ndjson)
      */
     @GetMapping
-    public ResponseEntity<List<PhotoDTO>> getAllPhotos() {
+    public ResponseEntity<StreamingResponseBody> getAllPhotos(
+            @RequestParam(value = "sort", defaultValue = "uploadedAt") String sort,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            ServletWebRequest request) {
         User currentUser = getCurrentUser();
+        if (isNotModified(request, currentUser)) {
+            return null;
+        }
         log.info("Fetching all photos for user: {}", currentUser.getUsername());
-        List<PhotoDTO> photos = photoService.getAllPhotosByUser(currentUser.getId());
-        return ResponseEntity.ok(photos);
+        return streamPhotos(currentUser.getId(), false, sort, accept);
+    }
+    
+    /**
+     * GET /api/photos?limit=&cursor=&sort=uploadedAt|takenAt
+     * Lấy một trang ảnh của user hiện tại (phân trang theo cursor)
+     */
+    @GetMapping(params = "limit")
+    public ResponseEntity<PhotoPageResponse> getPhotoPage(
+            @RequestParam("limit") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "sort", defaultValue = "uploadedAt") String sort,
+            ServletWebRequest request) {
+        User currentUser = getCurrentUser();
+        if (isNotModified(request, currentUser)) {
+            return null;
+        }
+        return ResponseEntity.ok(photoListService.getPage(currentUser.getId(), false,
+                PhotoListService.SortField.fromParam(sort), cursor, limit));
+    }
+    
+    /**
+     * Stream photos from a Mongo cursor, NDJSON only when the client asks for it explicitly
+     */
+    private ResponseEntity<StreamingResponseBody> streamPhotos(String userId, boolean gpsOnly,
+                                                               String sort, String accept) {
+        PhotoListService.SortField sortField = PhotoListService.SortField.fromParam(sort);
+        if (accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE)) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(out -> photoListService.writeNdjson(userId, gpsOnly, sortField, out));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> photoListService.writeJsonArray(userId, gpsOnly, sortField, out));
     }
     
     /**
@@ -90,13 +464,22 @@ public class PhotoController {
         return ResponseEntity.ok(photo);
     }
     
+    /**
+     * GET /api/photos/{id}/status
+     * Trạng thái xử lý nền của ảnh (PENDING/PROCESSING/DONE/FAILED)
+     */
+    @GetMapping("/{id}/status")
+    public ResponseEntity<ProcessingStatusResponse> getProcessingStatus(@PathVariable @NonNull String id) {
+        return ResponseEntity.ok(photoService.getProcessingStatus(id));
+    }
+    
     /**
      * POST /api/photos/upload
      * Upload ảnh mới và tự động trích xuất GPS từ EXIF metadata
      * 
      * @param file File ảnh cần upload (JPEG, PNG, etc.)
      * @param description Mô tả tùy chọn cho ảnh
-     * @return PhotoDTO chứa thông tin ảnh đã lưu, bao gồm GPS nếu có
+     * @return PhotoDTO chứa thông tin ảnh đã lưu, bao gồm GPS nếu có (202, xử lý nền tiếp tục)
      */
     @PostMapping("/upload")
     public ResponseEntity<?> uploadPhoto(
@@ -131,7 +514,8 @@ public class PhotoController {
                 log.info("Photo uploaded successfully without GPS coordinates");
             }
             
-            return ResponseEntity.status(HttpStatus.CREATED).body(photo);
+            // Blob and document are durable, post-processing continues in the background
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(photo);
             
         } catch (RuntimeException e) {
             log.error("Error uploading photo: {}", file.getOriginalFilename(), e);
@@ -144,6 +528,36 @@ public class PhotoController {
         }
     }
     
+    /**
+     * POST /api/photos/upload/batch
+     * Upload nhiều ảnh trong một request, xử lý song song
+     * 
+     * @param files Danh sách file ảnh
+     * @param description Mô tả tùy chọn, áp dụng cho mọi ảnh
+     * @return Kết quả cho từng file theo thứ tự gửi lên
+     */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<?> uploadPhotos(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "description", required = false) String description) {
+        
+        if (files.isEmpty()) {
+            log.warn("Batch upload attempt without files");
+            return ResponseEntity.badRequest().body("Không có file nào để upload");
+        }
+        if (files.size() > batchMaxFiles) {
+            log.warn("Batch upload attempt with {} files", files.size());
+            return ResponseEntity.badRequest().body("Tối đa " + batchMaxFiles + " file mỗi lần upload");
+        }
+        
+        User currentUser = getCurrentUser();
+        log.info("Batch uploading {} photos for user {}", files.size(), currentUser.getUsername());
+        
+        BatchUploadResponse response = photoService.uploadPhotos(files, description, currentUser);
+        HttpStatus status = response.getAccepted() > 0 ? HttpStatus.ACCEPTED : HttpStatus.BAD_REQUEST;
+        return ResponseEntity.status(status).body(response);
+    }
+    
     /**
      * DELETE /api/photos/{id}
      * Xóa ảnh
@@ -2,6 +2,8 @@ package com.geophoto.controller;
 
 import com.geophoto.entity.Photo;
 import com.geophoto.repository.PhotoRepository;
+import com.geophoto.service.PhotoTileService;
+import com.geophoto.service.PhotoVersionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -23,6 +25,8 @@ import java.util.List;
 public class TestDataController {
     
     private final PhotoRepository photoRepository;
+    private final PhotoTileService photoTileService;
+    private final PhotoVersionService photoVersionService;
     
     /**
      * POST /api/test/add-sample-photos
@@ -46,6 +50,8 @@ public class TestDataController {
         );
         
         photoRepository.saveAll(samplePhotos);
+        photoTileService.rebuild();
+        photoVersionService.bumpAll();
         
         log.info("Successfully added {} sample photos", samplePhotos.size());
         return ResponseEntity.ok("Added " + samplePhotos.size() + " sample photos with GPS coordinates!");
@@ -60,6 +66,8 @@ public class TestDataController {
         log.info("Clearing all photos from database");
         long count = photoRepository.count();
         photoRepository.deleteAll();
+        photoTileService.rebuild();
+        photoVersionService.bumpAll();
         log.info("Cleared {} photos", count);
         return ResponseEntity.ok("Cleared " + count + " photos from database");
     }
@@ -0,0 +1,107 @@
+package com.geophoto.controller;
+
+import com.geophoto.dto.CreateUploadSessionRequest;
+import com.geophoto.dto.MessageResponse;
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.UploadSessionResponse;
+import com.geophoto.entity.User;
+import com.geophoto.service.ResumableUploadService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Upload Session Controller
+ * REST API endpoints for resumable (chunked) photo uploads
+ */
+@RestController
+@RequestMapping("/api/photos/uploads")
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionController {
+    
+    private final ResumableUploadService resumableUploadService;
+    
+    /**
+     * Get current authenticated user
+     */
+    private User getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return (User) authentication.getPrincipal();
+    }
+    
+    /**
+     * POST /api/photos/uploads
+     * Tạo phiên upload có thể tiếp tục (resumable)
+     */
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> createSession(@Valid @RequestBody CreateUploadSessionRequest request) {
+        User currentUser = getCurrentUser();
+        log.info("Creating upload session for user {}: {} ({} bytes)",
+                currentUser.getUsername(), request.getFileName(), request.getTotalSize());
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(resumableUploadService.createSession(request, currentUser));
+    }
+    
+    /**
+     * GET /api/photos/uploads/{id}
+     * Lấy offset đã lưu để tiếp tục upload
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadSessionResponse> getSession(@PathVariable String id) {
+        return ResponseEntity.ok(resumableUploadService.getSession(id, getCurrentUser()));
+    }
+    
+    /**
+     * PUT /api/photos/uploads/{id}?offset=N
+     * Gửi dữ liệu (raw body) bắt đầu từ offset; trả về 409 nếu offset không khớp
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<?> appendChunk(
+            @PathVariable String id,
+            @RequestParam("offset") long offset,
+            InputStream body) throws IOException {
+        User currentUser = getCurrentUser();
+        try {
+            return ResponseEntity.ok(resumableUploadService.appendChunk(id, currentUser, offset, body));
+        } catch (IllegalStateException e) {
+            log.warn("Rejected chunk for upload session {} at offset {}: {}", id, offset, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(resumableUploadService.getSession(id, currentUser));
+        }
+    }
+    
+    /**
+     * POST /api/photos/uploads/{id}/complete
+     * Hoàn tất upload, tạo ảnh và trích xuất metadata
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> finalizeUpload(@PathVariable String id) {
+        User currentUser = getCurrentUser();
+        try {
+            PhotoDTO photo = resumableUploadService.finalizeUpload(id, currentUser);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(photo);
+        } catch (IllegalStateException e) {
+            log.warn("Cannot complete upload session {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new MessageResponse(e.getMessage()));
+        }
+    }
+    
+    /**
+     * DELETE /api/photos/uploads/{id}
+     * Hủy upload và xóa dữ liệu đã gửi
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abortUpload(@PathVariable String id) {
+        resumableUploadService.abortUpload(id, getCurrentUser());
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,31 @@
+package com.geophoto.dto;
+
+import com.geophoto.entity.BackfillJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Backfill Status Response DTO
+ * Progress of a backfill job as reported to admins
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BackfillStatusResponse {
+    
+    private BackfillJob.Status status;
+    private long total;
+    private long processed;
+    private long updated;
+    private long failed;
+    private long remaining;
+    private double photosPerSecond;
+    private String lastPhotoId;
+    private LocalDateTime startedAt;
+    private LocalDateTime checkpointAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
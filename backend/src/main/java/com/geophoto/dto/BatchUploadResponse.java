@@ -0,0 +1,21 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Batch Upload Response DTO
+ * Per-file results of POST /api/photos/upload/batch, in request order
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadResponse {
+    
+    private int accepted;
+    private int failed;
+    private List<BatchUploadResult> results;
+}
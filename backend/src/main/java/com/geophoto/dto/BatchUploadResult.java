@@ -0,0 +1,20 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Batch Upload Result DTO
+ * Outcome of a single file within a batch upload
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadResult {
+    
+    private String fileName;
+    private boolean success;
+    private PhotoDTO photo;
+    private String error;
+}
@@ -0,0 +1,30 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Blob Cache Stats Response DTO
+ * Size and effectiveness of the local disk cache of GridFS files since startup
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobCacheStatsResponse {
+    
+    private boolean enabled;
+    private long maxBytes;
+    private long usedBytes;
+    private int files;
+    private long hits;
+    private long misses;
+    private double hitRatio;
+    /**
+     * Misses that waited for a concurrent fetch of the same file instead of reading GridFS
+     */
+    private long coalescedFetches;
+    private long bytesServedFromDisk;
+    private long bytesFetchedFromMongo;
+    private long evictions;
+}
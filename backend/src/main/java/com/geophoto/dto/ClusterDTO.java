@@ -0,0 +1,29 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cluster DTO
+ * Group of nearby photos on the map: centroid, bounds and a representative photo
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterDTO {
+    
+    private long count;
+    private Double latitude;
+    private Double longitude;
+    private Double minLatitude;
+    private Double minLongitude;
+    private Double maxLatitude;
+    private Double maxLongitude;
+    
+    /**
+     * Newest photo of the cluster, the photo itself when count is 1
+     */
+    private String photoId;
+    private String thumbnailUrl;
+}
@@ -0,0 +1,22 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Clusters Response DTO
+ * Map content for a viewport: clusters when zoomed out, individual photos when zoomed in
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClustersResponse {
+    
+    private int zoom;
+    private List<ClusterDTO> clusters;
+    private List<PhotoDTO> photos;
+    private boolean truncated;
+}
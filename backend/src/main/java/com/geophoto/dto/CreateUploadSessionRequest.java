@@ -0,0 +1,28 @@
+package com.geophoto.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Create Upload Session Request DTO
+ * Starts a resumable upload of a file with a known size
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateUploadSessionRequest {
+    
+    @NotBlank(message = "Tên file không được để trống")
+    private String fileName;
+    
+    @NotBlank(message = "Content type không được để trống")
+    private String contentType;
+    
+    @Positive(message = "Kích thước file phải lớn hơn 0")
+    private long totalSize;
+    
+    private String description;
+}
@@ -0,0 +1,31 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Heatmap Response DTO
+ * Photo density grid of a viewport in Web Mercator: columns x rows cells of
+ * cellPixels screen pixels between west/east and north/south. data holds the
+ * cell counts row by row from the north-west corner as run-length
+ * (run, count) pairs of unsigned varints, base64 encoded.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeatmapResponse {
+    
+    private int zoom;
+    private double cellPixels;
+    private int columns;
+    private int rows;
+    private double west;
+    private double south;
+    private double east;
+    private double north;
+    private long total;
+    private int maxCount;
+    private String encoding;
+    private String data;
+}
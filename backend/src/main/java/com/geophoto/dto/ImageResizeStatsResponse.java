@@ -0,0 +1,28 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Image Resize Stats Response DTO
+ * Work done by the resize pool since startup
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageResizeStatsResponse {
+    
+    /**
+     * Variants missing from the cache and rendered (or attempted)
+     */
+    private long renders;
+    
+    /**
+     * Requests that waited for a concurrent render of the same variant
+     */
+    private long coalesced;
+    
+    private int activeRenders;
+    private int queuedRenders;
+}
@@ -0,0 +1,33 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Markers Response DTO
+ * Columnar marker payload: entry i of every array belongs to the same photo.
+ * Coordinates are fixed-point ints (degrees * scale), each one stored as the
+ * difference to the previous photo; photos are ordered by geohash so the
+ * differences stay small.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MarkersResponse {
+    
+    private int count;
+    private int scale;
+    
+    /**
+     * Prefix of thumbnail keys that are not absolute URLs
+     */
+    private String thumbnailBaseUrl;
+    
+    private List<String> ids;
+    private List<String> thumbnails;
+    private int[] latitudes;
+    private int[] longitudes;
+}
@@ -0,0 +1,22 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Nearby Photo DTO
+ * A photo returned by a nearest-photos query with its distance from the query point
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyPhotoDTO {
+    
+    private PhotoDTO photo;
+    
+    /**
+     * Great-circle distance in meters
+     */
+    private double distanceMeters;
+}
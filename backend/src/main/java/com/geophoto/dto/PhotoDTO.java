@@ -1,9 +1,11 @@
 package com.geophoto.dto;
 
+import com.geophoto.entity.Photo;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 /**
@@ -22,7 +24,17 @@ public class PhotoDTO {
     private Double latitude;
     private Double longitude;
     private LocalDateTime takenAt;
+    private String timeZoneOffset;
+    private Double altitude;
+    private Double heading;
+    private Instant gpsTimestamp;
+    private String cameraMake;
+    private String cameraModel;
+    private Integer width; // Stored pixels, swap with height when orientation is 5-8
+    private Integer height;
+    private Integer orientation;
     private String description;
     private LocalDateTime uploadedAt;
+    private Photo.ProcessingStatus processingStatus;
 }
 
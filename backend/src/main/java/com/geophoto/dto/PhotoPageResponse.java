@@ -0,0 +1,24 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Photo Page Response DTO
+ * One page of a keyset-paginated photo list
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotoPageResponse {
+    
+    private List<PhotoDTO> photos;
+    
+    /**
+     * Opaque cursor for the next page, null on the last page
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Photos Within Response DTO
+ * Photos inside a map viewport, truncated when the viewport holds more than the limit
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotosWithinResponse {
+    
+    private List<PhotoDTO> photos;
+    private boolean truncated;
+}
@@ -0,0 +1,21 @@
+package com.geophoto.dto;
+
+import com.geophoto.entity.Photo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Processing Status Response DTO
+ * Returned by the polling endpoint for background photo processing
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessingStatusResponse {
+    
+    private String id;
+    private Photo.ProcessingStatus status;
+    private int attempts;
+    private String error;
+}
@@ -0,0 +1,21 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sprite Offset DTO
+ * Where one photo's thumbnail sits in a sprite sheet, in pixels
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpriteOffsetDTO {
+    
+    private String id;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+}
@@ -0,0 +1,26 @@
+package com.geophoto.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Sprite Request DTO
+ * Photos whose thumbnails should be packed into one sprite sheet
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpriteRequest {
+    
+    @NotEmpty(message = "Danh sách ảnh không được để trống")
+    private List<String> ids;
+    
+    /**
+     * Thumbnail size: "marker" (default) or "grid"
+     */
+    private String size;
+}
@@ -0,0 +1,26 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Sprite Response DTO
+ * A sprite sheet of thumbnails and the position of each photo in it.
+ * Requested photos without a thumbnail are left out.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpriteResponse {
+    
+    /**
+     * Image URL of the sprite sheet, content-addressed and cached like other images
+     */
+    private String url;
+    private int width;
+    private int height;
+    private List<SpriteOffsetDTO> sprites;
+}
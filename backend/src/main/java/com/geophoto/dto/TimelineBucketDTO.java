@@ -0,0 +1,18 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Timeline Bucket DTO
+ * Number of photos taken in one day ("2024-05-17") or month ("2024-05")
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimelineBucketDTO {
+    
+    private String period;
+    private long count;
+}
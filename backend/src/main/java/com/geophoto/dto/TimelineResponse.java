@@ -0,0 +1,23 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Timeline Response DTO
+ * Photo counts per capture day or month, oldest first, for the map time scrubber
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimelineResponse {
+    
+    /**
+     * "day" or "month"
+     */
+    private String bucket;
+    private List<TimelineBucketDTO> buckets;
+}
@@ -0,0 +1,23 @@
+package com.geophoto.dto;
+
+import com.geophoto.entity.UploadSession;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Upload Session Response DTO
+ * Current state of a resumable upload; clients resume at committedOffset
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionResponse {
+    
+    private String id;
+    private long totalSize;
+    private int chunkSize;
+    private long committedOffset;
+    private UploadSession.Status status;
+    private String photoId;
+}
@@ -0,0 +1,53 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Backfill Job Document
+ * Progress and checkpoint of a long-running maintenance job, one document per job
+ */
+@Document(collection = "backfill_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BackfillJob {
+    
+    @Id
+    private String id;
+    
+    private Status status;
+    
+    /**
+     * Last photo id whose batch was fully written, the job resumes after it
+     */
+    private String lastPhotoId;
+    
+    private long total;
+    
+    private long processed;
+    
+    private long updated;
+    
+    private long failed;
+    
+    private String error;
+    
+    private LocalDateTime startedAt;
+    
+    private LocalDateTime checkpointAt;
+    
+    private LocalDateTime finishedAt;
+    
+    public enum Status {
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -1,12 +1,16 @@
 package com.geophoto.entity;
 
+import com.geophoto.util.Geohash;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 /**
@@ -14,6 +18,12 @@ import java.time.LocalDateTime;
  * Represents a photo with GPS metadata stored in MongoDB
  */
 @Document(collection = "photos")
+@CompoundIndex(name = "processing_queue", def = "{'processingStatus': 1, 'uploadedAt': 1}")
+@CompoundIndex(name = "user_content_hash", def = "{'userId': 1, 'contentHash': 1}")
+@CompoundIndex(name = "user_location_taken_at", def = "{'userId': 1, 'location': '2dsphere', 'takenAt': 1}")
+@CompoundIndex(name = "user_geohash_id", def = "{'userId': 1, 'geohash': 1, '_id': -1}")
+@CompoundIndex(name = "user_uploaded_at", def = "{'userId': 1, 'uploadedAt': -1, '_id': -1}")
+@CompoundIndex(name = "user_taken_at", def = "{'userId': 1, 'takenAt': -1, '_id': -1}")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,14 +38,58 @@ public class Photo {
     
     private String thumbnailUrl;
     
-    // Note: Geospatial indexing disabled temporarily
-    // @GeoSpatialIndexed requires GeoJSON format or [longitude, latitude] array
     private Double latitude;
     
     private Double longitude;
     
+    /**
+     * GeoJSON copy of latitude/longitude for the 2dsphere index, kept in sync by the setters
+     */
+    private GeoJsonPoint location;
+    
+    /**
+     * Full-precision geohash of the location, its prefixes key the photo_tiles aggregates
+     */
+    private String geohash;
+    
     private LocalDateTime takenAt;
     
+    /**
+     * Offset of takenAt from UTC as recorded by the camera, e.g. "+07:00"
+     */
+    private String timeZoneOffset;
+    
+    /**
+     * GPS altitude in meters, negative below sea level
+     */
+    private Double altitude;
+    
+    /**
+     * Direction the camera was facing, degrees 0-360
+     */
+    private Double heading;
+    
+    /**
+     * GPS date/time (UTC)
+     */
+    private Instant gpsTimestamp;
+    
+    private String cameraMake;
+    
+    private String cameraModel;
+    
+    /**
+     * Stored pixel dimensions, before orientation is applied
+     */
+    private Integer width;
+    
+    private Integer height;
+    
+    /**
+     * EXIF orientation (1-8), applied when generating thumbnails
+     */
+    private Integer orientation;
+    
     private String description;
     
     private LocalDateTime uploadedAt = LocalDateTime.now();
@@ -46,5 +100,79 @@ public class Photo {
      */
     @Indexed
     private String userId;
+    
+    /**
+     * SHA-256 of the original, links the photo to its shared PhotoBlob.
+     * Null for photos created before deduplication.
+     */
+    private String contentHash;
+    
+    /**
+     * True once EXIF metadata has been read (inline at upload or by the processing queue)
+     */
+    private Boolean metadataExtracted;
+    
+    /**
+     * True once the location was set by hand, EXIF re-extraction leaves it alone
+     */
+    private Boolean locationEdited;
+    
+    /**
+     * Post-processing state, drives the background processing queue.
+     * Null for photos created before the queue existed (treated as DONE).
+     */
+    private ProcessingStatus processingStatus;
+    
+    private int processingAttempts;
+    
+    private LocalDateTime processingStartedAt;
+    
+    private String processingError;
+    
+    /**
+     * Processing Status Enum
+     */
+    public enum ProcessingStatus {
+        PENDING,
+        PROCESSING,
+        DONE,
+        FAILED
+    }
+    
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+        syncLocation();
+    }
+    
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+        syncLocation();
+    }
+    
+    private void syncLocation() {
+        this.location = toLocation(latitude, longitude);
+        this.geohash = toGeohash(latitude, longitude);
+    }
+    
+    /**
+     * GeoJSON point for a coordinate pair, null when missing or out of range
+     * (the 2dsphere index rejects invalid coordinates)
+     */
+    public static GeoJsonPoint toLocation(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null
+                || latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            return null;
+        }
+        return new GeoJsonPoint(longitude, latitude);
+    }
+    
+    /**
+     * Full-precision geohash for a coordinate pair, null when there is no valid location
+     */
+    public static String toGeohash(Double latitude, Double longitude) {
+        if (toLocation(latitude, longitude) == null) {
+            return null;
+        }
+        return Geohash.encode(latitude, longitude, Geohash.MAX_PRECISION);
+    }
 }
-
@@ -0,0 +1,45 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Photo Blob Document
+ * One stored original in GridFS, shared by every Photo of the same user
+ * with identical content. The blob and its derivatives are deleted when
+ * refCount drops to zero.
+ */
+@Document(collection = "photo_blobs")
+@CompoundIndex(name = "user_hash", def = "{'userId': 1, 'contentHash': 1}", unique = true)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotoBlob {
+    
+    @Id
+    private String id;
+    
+    private String userId;
+    
+    /**
+     * SHA-256 of the file content, hex encoded
+     */
+    private String contentHash;
+    
+    /**
+     * GridFS filename of the original
+     */
+    private String filename;
+    
+    private long length;
+    
+    private int refCount;
+    
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,48 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Photo Tile Document
+ * Aggregate of one user's photos inside a geohash cell, kept at several
+ * precisions. The id is "userId:geohash". Bounds only ever grow between
+ * rebuilds, deletes cannot shrink a $min/$max.
+ */
+@Document(collection = "photo_tiles")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotoTile {
+    
+    @Id
+    private String id;
+    
+    private String userId;
+    
+    private String geohash;
+    
+    private int precision;
+    
+    private long count;
+    
+    private double sumLat;
+    
+    private double sumLon;
+    
+    private Double minLat;
+    
+    private Double minLon;
+    
+    private Double maxLat;
+    
+    private Double maxLon;
+    
+    /**
+     * Most recently uploaded photo of the cell (ObjectId hex sorts by creation time)
+     */
+    private String newestPhotoId;
+}
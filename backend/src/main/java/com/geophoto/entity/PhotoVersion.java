@@ -0,0 +1,25 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Photo Version Document
+ * Per-user counter incremented after every change to the user's photos.
+ * The id is the userId, or "*" for the version added to every user's.
+ * A missing document means version 0.
+ */
+@Document(collection = "photo_versions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotoVersion {
+    
+    @Id
+    private String id;
+    
+    private long version;
+}
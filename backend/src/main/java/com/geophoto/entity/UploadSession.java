@@ -0,0 +1,71 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload Session Document
+ * State of a resumable upload whose chunks are written straight into GridFS
+ */
+@Document(collection = "upload_sessions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    
+    @Id
+    private String id;
+    
+    @Indexed
+    private String userId;
+    
+    private String fileName;
+    
+    private String contentType;
+    
+    private String description;
+    
+    private long totalSize;
+    
+    private int chunkSize;
+    
+    /**
+     * Bytes durably stored in GridFS chunks; always a multiple of
+     * chunkSize except once the upload is complete
+     */
+    private long committedOffset;
+    
+    /**
+     * files_id of the GridFS chunks, becomes the _id of the fs.files document
+     */
+    private ObjectId gridFsFileId;
+    
+    /**
+     * Unique GridFS filename, as used in /api/photos/image/{storedFilename}
+     */
+    private String storedFilename;
+    
+    private Status status = Status.ACTIVE;
+    
+    private String photoId;
+    
+    private LocalDateTime createdAt = LocalDateTime.now();
+    
+    @Indexed
+    private LocalDateTime expiresAt;
+    
+    /**
+     * Upload Session Status Enum
+     */
+    public enum Status {
+        ACTIVE,
+        COMPLETED
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Photo Repository
@@ -30,6 +31,11 @@ public interface PhotoRepository extends MongoRepository<Photo, String> {
      */
     List<Photo> findByUserIdAndLatitudeIsNotNullAndLongitudeIsNotNull(String userId);
     
+    /**
+     * Find any photo of the user with the given content hash
+     */
+    Optional<Photo> findFirstByUserIdAndContentHash(String userId, String contentHash);
+    
     /**
      * Count photos by user ID
      */
@@ -0,0 +1,21 @@
+package com.geophoto.repository;
+
+import com.geophoto.entity.UploadSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Upload Session Repository
+ * MongoDB Repository for resumable upload sessions
+ */
+@Repository
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+    
+    /**
+     * Find sessions that expired before the given time
+     */
+    List<UploadSession> findByExpiresAtBefore(LocalDateTime time);
+}
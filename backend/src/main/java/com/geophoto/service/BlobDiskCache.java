@@ -0,0 +1,317 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.BlobCacheStatsResponse;
+import com.geophoto.util.GridFsFileResource;
+import com.geophoto.util.SingleFlight;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Blob Disk Cache
+ * Read-through copy of GridFS files on the backend's local disk, so repeat
+ * image requests are answered from the page cache (with sendfile where the
+ * connector supports it) instead of pulling chunks from MongoDB. Entries
+ * are keyed by GridFS file id: a name stored again gets a new id, so a
+ * cached copy can never be stale, and deleted files are evicted eagerly.
+ * Kept in LRU order under app.blob-cache.max-bytes. Evicted files are
+ * deleted app.blob-cache.delete-delay-ms later, so a path handed out just
+ * before its eviction can still be opened and served.
+ */
+@Service
+@Slf4j
+public class BlobDiskCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Value("${app.blob-cache.dir:cache/blobs}")
+    private String cacheDir;
+
+    @Value("${app.blob-cache.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${app.blob-cache.max-file-bytes:67108864}")
+    private long maxFileBytes;
+
+    @Value("${app.blob-cache.delete-delay-ms:60000}")
+    private long deleteDelayMs;
+
+    private Path directory;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    // Variant keys ("<id>_<suffix>") of each cached source id, guarded by this
+    private final Map<String, Set<String>> variantsBySource = new HashMap<>();
+    // Evicted keys and when, guarded by this
+    private final Map<String, Long> pendingDeletes = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesFromDisk = new AtomicLong();
+    private final AtomicLong bytesFromMongo = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final SingleFlight<String, Path> fetches = new SingleFlight<>();
+
+    /**
+     * Pick up files cached before a restart, oldest first so LRU order survives
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (maxBytes <= 0) {
+            return;
+        }
+        directory = Paths.get(cacheDir).toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(BlobDiskCache::lastModified));
+        synchronized (this) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                long size = Files.size(file);
+                entries.put(name, size);
+                indexVariant(name);
+                totalBytes += size;
+            }
+            evict();
+        }
+        log.info("Blob disk cache at {} holds {} files, {} bytes", directory, entries.size(), totalBytes);
+    }
+
+    /**
+     * Local copy of a GridFS file, fetched from MongoDB on a miss
+     * @return null when the cache is disabled, the file is too large or the copy failed
+     */
+    public Path get(GridFsFileResource file) {
+        if (directory == null || file.contentLength() > maxFileBytes) {
+            return null;
+        }
+        String key = file.getFileId();
+        Path path = directory.resolve(key);
+        synchronized (this) {
+            if (entries.get(key) != null) {
+                hits.incrementAndGet();
+                bytesFromDisk.addAndGet(file.contentLength());
+                return path;
+            }
+        }
+
+        misses.incrementAndGet();
+        // Concurrent misses of the same file share one read from GridFS
+        return fetches.execute(key, () -> fetch(file, key, path));
+    }
+
+    private Path fetch(GridFsFileResource file, String key, Path path) {
+        // Filled by a fetch that finished after the caller's lookup
+        if (peek(key) != null) {
+            return path;
+        }
+        Path temp = directory.resolve(key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try (InputStream inputStream = file.getInputStream()) {
+            long size = Files.copy(inputStream, temp);
+            bytesFromMongo.addAndGet(size);
+            add(key, temp, size);
+            return path;
+        } catch (IOException e) {
+            log.warn("Failed to cache GridFS file {}: {}", file.getFilename(), e.getMessage());
+            deleteQuietly(temp);
+            return null;
+        }
+    }
+
+    /**
+     * Cached file stored with {@link #put}, e.g. a resized variant
+     * @return null on a miss
+     */
+    public Path find(String key) {
+        if (directory == null) {
+            return null;
+        }
+        synchronized (this) {
+            Long size = entries.get(key);
+            if (size == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            bytesFromDisk.addAndGet(size);
+        }
+        return directory.resolve(key);
+    }
+
+    /**
+     * Like {@link #find}, without counting a lookup, for re-checks after waiting
+     */
+    public synchronized Path peek(String key) {
+        return directory != null && entries.containsKey(key) ? directory.resolve(key) : null;
+    }
+
+    /**
+     * Store a file just written to GridFS, or a variant derived from one
+     * (keyed by the file id, "_" and a suffix so it is evicted with the file)
+     */
+    public void put(String key, byte[] data) {
+        if (directory == null || data.length > maxFileBytes) {
+            return;
+        }
+        Path temp = directory.resolve(key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            Files.write(temp, data);
+            add(key, temp, data.length);
+        } catch (IOException e) {
+            log.warn("Failed to cache GridFS file {}: {}", key, e.getMessage());
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Drop the local copies of GridFS files being deleted, and their variants
+     */
+    public void evict(Collection<String> fileIds) {
+        if (directory == null || fileIds.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (String fileId : fileIds) {
+                remove(fileId);
+                Set<String> variants = variantsBySource.remove(fileId);
+                if (variants != null) {
+                    variants.forEach(this::remove);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete evicted files once readers that got their path have opened them
+     * A key cached again in the meantime keeps its file.
+     */
+    @Scheduled(fixedDelayString = "${app.blob-cache.delete-delay-ms:60000}")
+    public synchronized void deleteEvicted() {
+        long cutoff = System.currentTimeMillis() - deleteDelayMs;
+        Iterator<Map.Entry<String, Long>> iterator = pendingDeletes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> pending = iterator.next();
+            if (pending.getValue() > cutoff) {
+                continue;
+            }
+            iterator.remove();
+            if (!entries.containsKey(pending.getKey())) {
+                deleteQuietly(directory.resolve(pending.getKey()));
+            }
+        }
+    }
+
+    public synchronized BlobCacheStatsResponse getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        return new BlobCacheStatsResponse(directory != null, maxBytes, totalBytes, entries.size(),
+                hitCount, misses.get(), lookups == 0 ? 0 : (double) hitCount / lookups,
+                fetches.getCoalesced(), bytesFromDisk.get(), bytesFromMongo.get(), evictions.get());
+    }
+
+    /**
+     * Move a complete temp file into place and account for it, under the lock
+     * so a pending delete of the same key cannot remove the new file
+     */
+    private synchronized void add(String key, Path temp, long size) throws IOException {
+        Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        pendingDeletes.remove(key);
+        Long previous = entries.put(key, size);
+        indexVariant(key);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        totalBytes += size;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            unindexVariant(entry.getKey());
+            evictions.incrementAndGet();
+            pendingDeletes.put(entry.getKey(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Drop one entry, its file is deleted after the delay
+     */
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            pendingDeletes.put(key, System.currentTimeMillis());
+        }
+    }
+
+    private void indexVariant(String key) {
+        int separator = key.indexOf('_');
+        if (separator != -1) {
+            variantsBySource.computeIfAbsent(key.substring(0, separator), source -> new HashSet<>()).add(key);
+        }
+    }
+
+    private void unindexVariant(String key) {
+        int separator = key.indexOf('_');
+        if (separator == -1) {
+            return;
+        }
+        String source = key.substring(0, separator);
+        Set<String> variants = variantsBySource.get(source);
+        if (variants != null && variants.remove(key) && variants.isEmpty()) {
+            variantsBySource.remove(source);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.ImageResizeStatsResponse;
+import com.geophoto.util.GpsExtractor;
+import com.geophoto.util.GridFsFileResource;
+import com.geophoto.util.ImageScaler;
+import com.geophoto.util.PhotoMetadata;
+import com.geophoto.util.SingleFlight;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Image Resize Service
+ * Resized JPEG variants of stored images for ?w=&h=&fit=&q= requests.
+ * Sizes and qualities are limited to configured values so clients cannot
+ * fill the cache with arbitrary variants. Decoding subsamples the source
+ * and runs on the bounded imageResizeExecutor, so a burst of new sizes
+ * queues (or is rejected) instead of decoding without limit. Results are
+ * kept in the blob disk cache next to their source.
+ */
+@Service
+@Slf4j
+public class ImageResizeService {
+
+    public static final String CONTENT_TYPE = "image/jpeg";
+
+    private final BlobDiskCache blobDiskCache;
+    private final ThreadPoolTaskExecutor executor;
+    private final SingleFlight<String, Resource> renders = new SingleFlight<>();
+
+    @Value("${app.image.resize.sizes:32,48,64,96,128,192,256,384,512,768,1024,1536,2048}")
+    private List<Integer> sizes;
+
+    @Value("${app.image.resize.qualities:50,65,80,90}")
+    private List<Integer> qualities;
+
+    @Value("${app.image.resize.default-quality:80}")
+    private int defaultQuality;
+
+    @Value("${app.image.resize.timeout-ms:30000}")
+    private long timeoutMs;
+
+    @Value("${app.upload.metadata-prefix-bytes:262144}")
+    private int metadataPrefixBytes;
+
+    public ImageResizeService(BlobDiskCache blobDiskCache,
+                              @Qualifier("imageResizeExecutor") ThreadPoolTaskExecutor executor) {
+        this.blobDiskCache = blobDiskCache;
+        this.executor = executor;
+    }
+
+    /**
+     * How a resized image fills the requested box
+     */
+    public enum Fit {
+        /** Scale to fit inside the box, keeping the aspect ratio */
+        CONTAIN,
+        /** Scale to cover the box, then crop the overflow around the center */
+        COVER;
+
+        public static Fit fromParam(String param) {
+            if (param == null || param.isBlank()) {
+                return CONTAIN;
+            }
+            for (Fit fit : values()) {
+                if (fit.name().equalsIgnoreCase(param)) {
+                    return fit;
+                }
+            }
+            throw new IllegalArgumentException("fit must be contain or cover");
+        }
+    }
+
+    /**
+     * Validated resize parameters, 0 for an unbounded side
+     */
+    @Getter
+    public static class Variant {
+        private final int width;
+        private final int height;
+        private final Fit fit;
+        private final int quality;
+
+        private Variant(int width, int height, Fit fit, int quality) {
+            this.width = width;
+            this.height = height;
+            this.fit = fit;
+            this.quality = quality;
+        }
+
+        /**
+         * Cache key and ETag suffix, e.g. w256-h0-contain-q80
+         */
+        public String getKey() {
+            return "w" + width + "-h" + height + "-" + fit.name().toLowerCase() + "-q" + quality;
+        }
+    }
+
+    /**
+     * Check the w/h/fit/q request parameters against the allowed values
+     * @return null when no resize was requested
+     * @throws IllegalArgumentException for values outside the whitelist
+     */
+    public Variant parseVariant(Integer width, Integer height, String fit, Integer quality) {
+        if (width == null && height == null && fit == null && quality == null) {
+            return null;
+        }
+        if (width == null && height == null) {
+            throw new IllegalArgumentException("w or h is required to resize");
+        }
+        if ((width != null && !sizes.contains(width)) || (height != null && !sizes.contains(height))) {
+            throw new IllegalArgumentException("w and h must be one of " + sizes);
+        }
+        if (quality != null && !qualities.contains(quality)) {
+            throw new IllegalArgumentException("q must be one of " + qualities);
+        }
+        Fit parsedFit = Fit.fromParam(fit);
+        if (parsedFit == Fit.COVER && (width == null || height == null)) {
+            throw new IllegalArgumentException("fit=cover needs both w and h");
+        }
+        return new Variant(width == null ? 0 : width, height == null ? 0 : height, parsedFit,
+                quality == null ? defaultQuality : quality);
+    }
+
+    /**
+     * Resized JPEG of a stored image, from the disk cache or rendered on the resize pool
+     * @throws org.springframework.core.task.TaskRejectedException when the resize pool is full
+     */
+    public Resource resize(GridFsFileResource file, Variant variant) {
+        String key = file.getFileId() + "_" + variant.getKey();
+        Path cached = blobDiskCache.find(key);
+        if (cached != null) {
+            return new FileSystemResource(cached);
+        }
+        // Clients opening the same view at once ask for the same variant, render it once
+        return renders.execute(key, () -> {
+            Path rendered = blobDiskCache.peek(key);
+            return rendered != null ? new FileSystemResource(rendered) : renderOnPool(file, variant, key);
+        });
+    }
+
+    /**
+     * Resize requests that rendered an image, and requests that shared a concurrent render
+     */
+    public ImageResizeStatsResponse getStats() {
+        return new ImageResizeStatsResponse(renders.getExecutions(), renders.getCoalesced(),
+                executor.getActiveCount(), executor.getThreadPoolExecutor().getQueue().size());
+    }
+
+    private Resource renderOnPool(GridFsFileResource file, Variant variant, String key) {
+        Future<byte[]> task = executor.submit(() -> render(file, variant));
+        byte[] data;
+        try {
+            data = task.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            throw new RuntimeException("Resizing " + file.getFilename() + " timed out");
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resizing " + file.getFilename());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Failed to resize " + file.getFilename() + ": "
+                    + e.getCause().getMessage(), e.getCause());
+        }
+        blobDiskCache.put(key, data);
+        return new ByteArrayResource(data);
+    }
+
+    /**
+     * Decode (subsampled), orient, scale, crop and encode one variant
+     * The source comes from the disk cache when possible, and its EXIF
+     * orientation is read from the header bytes of the same stream.
+     */
+    private byte[] render(GridFsFileResource file, Variant variant) throws IOException {
+        long start = System.currentTimeMillis();
+        Path local = blobDiskCache.get(file);
+        try (InputStream source = local != null ? Files.newInputStream(local) : file.getInputStream()) {
+            byte[] header = source.readNBytes(metadataPrefixBytes);
+            PhotoMetadata metadata = GpsExtractor.readHeader(header,
+                    header.length == metadataPrefixBytes, file.getFilename());
+            Integer orientation = metadata == null ? null : metadata.getOrientation();
+            boolean swap = orientation != null && orientation >= 5 && orientation <= 8;
+
+            // The box is compared with stored dimensions, before orientation swaps them
+            BufferedImage image = ImageScaler.readSubsampled(
+                    new SequenceInputStream(new ByteArrayInputStream(header), source),
+                    swap ? variant.getHeight() : variant.getWidth(),
+                    swap ? variant.getWidth() : variant.getHeight(),
+                    variant.getFit() == Fit.COVER);
+            if (image == null) {
+                throw new IllegalArgumentException("Image format of " + file.getFilename() + " cannot be resized");
+            }
+            image = ImageScaler.applyOrientation(image, orientation);
+
+            double widthRatio = variant.getWidth() > 0 ? (double) variant.getWidth() / image.getWidth() : -1;
+            double heightRatio = variant.getHeight() > 0 ? (double) variant.getHeight() / image.getHeight() : -1;
+            double ratio;
+            if (variant.getFit() == Fit.COVER) {
+                ratio = Math.max(widthRatio, heightRatio);
+            } else if (widthRatio < 0 || heightRatio < 0) {
+                ratio = Math.max(widthRatio, heightRatio);
+            } else {
+                ratio = Math.min(widthRatio, heightRatio);
+            }
+            ratio = Math.min(1.0, ratio);
+            image = ImageScaler.scale(image, Math.max(1, (int) Math.round(image.getWidth() * ratio)),
+                    Math.max(1, (int) Math.round(image.getHeight() * ratio)));
+            if (variant.getFit() == Fit.COVER) {
+                image = ImageScaler.cropCenter(image, variant.getWidth(), variant.getHeight());
+            }
+
+            byte[] data = ImageScaler.encodeJpeg(image, variant.getQuality() / 100f);
+            log.debug("Resized {} to {} in {} ms", file.getFilename(), variant.getKey(),
+                    System.currentTimeMillis() - start);
+            return data;
+        }
+    }
+}
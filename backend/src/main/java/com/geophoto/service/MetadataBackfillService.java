@@ -0,0 +1,294 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.BackfillStatusResponse;
+import com.geophoto.entity.BackfillJob;
+import com.geophoto.entity.Photo;
+import com.geophoto.util.PhotoMetadata;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Metadata Backfill Service
+ * Re-extracts EXIF metadata of existing photos. Photos are streamed with a
+ * cursor in _id order and handled in batches: originals are read on a small
+ * low-priority pool, updates go back in one unordered bulk write, then the
+ * last id of the batch is checkpointed so the job resumes after a crash.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MetadataBackfillService {
+
+    static final String JOB_ID = "metadata";
+
+    private final MongoTemplate mongoTemplate;
+    private final PhotoService photoService;
+    private final PhotoTileService photoTileService;
+    private final PhotoVersionService photoVersionService;
+
+    @Value("${app.backfill.parallelism:2}")
+    private int parallelism;
+
+    @Value("${app.backfill.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.backfill.max-photos-per-second:20}")
+    private int maxPhotosPerSecond;
+
+    private Thread runner;
+    private volatile boolean stopRequested;
+    private volatile boolean shuttingDown;
+
+    // Throughput of the current run, in-memory only
+    private volatile long runStartedNanos;
+    private volatile long processedAtRunStart;
+
+    /**
+     * Continue a job that was running when the application stopped
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void resumeInterrupted() {
+        BackfillJob job = mongoTemplate.findById(JOB_ID, BackfillJob.class);
+        if (job != null && job.getStatus() == BackfillJob.Status.RUNNING) {
+            log.info("Resuming metadata backfill after photo {}", job.getLastPhotoId());
+            launch(job);
+        }
+    }
+
+    /**
+     * Start a new backfill, or resume a paused one from its checkpoint
+     */
+    public synchronized BackfillStatusResponse start() {
+        if (isRunning()) {
+            return getStatus();
+        }
+        BackfillJob job = mongoTemplate.findById(JOB_ID, BackfillJob.class);
+        if (job == null || job.getStatus() == BackfillJob.Status.COMPLETED
+                || job.getStatus() == BackfillJob.Status.FAILED) {
+            job = new BackfillJob();
+            job.setId(JOB_ID);
+            job.setTotal(mongoTemplate.estimatedCount(Photo.class));
+            job.setStartedAt(LocalDateTime.now());
+        }
+        job.setStatus(BackfillJob.Status.RUNNING);
+        job.setError(null);
+        job.setFinishedAt(null);
+        mongoTemplate.save(job);
+        launch(job);
+        return getStatus();
+    }
+
+    /**
+     * Stop after the current batch, the checkpoint is kept for a later start
+     */
+    public synchronized BackfillStatusResponse pause() {
+        if (isRunning()) {
+            stopRequested = true;
+        }
+        return getStatus();
+    }
+
+    /**
+     * Progress of the backfill, remaining is counted from the checkpoint
+     */
+    public BackfillStatusResponse getStatus() {
+        BackfillJob job = mongoTemplate.findById(JOB_ID, BackfillJob.class);
+        if (job == null) {
+            return new BackfillStatusResponse(null, 0, 0, 0, 0, 0, 0, null, null, null, null, null);
+        }
+
+        long remaining = job.getStatus() == BackfillJob.Status.COMPLETED
+                ? 0
+                : mongoTemplate.count(afterCheckpoint(job.getLastPhotoId()), Photo.class);
+
+        double photosPerSecond = 0;
+        if (isRunning()) {
+            double seconds = (System.nanoTime() - runStartedNanos) / 1e9;
+            if (seconds > 0) {
+                photosPerSecond = (job.getProcessed() - processedAtRunStart) / seconds;
+            }
+        }
+
+        return new BackfillStatusResponse(job.getStatus(), job.getTotal(), job.getProcessed(),
+                job.getUpdated(), job.getFailed(), remaining, photosPerSecond, job.getLastPhotoId(),
+                job.getStartedAt(), job.getCheckpointAt(), job.getFinishedAt(), job.getError());
+    }
+
+    /**
+     * Stop the runner but leave the job RUNNING so the next startup resumes it
+     */
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        stopRequested = true;
+    }
+
+    private boolean isRunning() {
+        return runner != null && runner.isAlive();
+    }
+
+    private void launch(BackfillJob job) {
+        stopRequested = false;
+        runStartedNanos = System.nanoTime();
+        processedAtRunStart = job.getProcessed();
+        runner = new Thread(() -> run(job.getLastPhotoId()), "metadata-backfill");
+        runner.setDaemon(true);
+        runner.setPriority(Thread.MIN_PRIORITY);
+        runner.start();
+    }
+
+    private void run(String lastPhotoId) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService readers = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "metadata-backfill-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        Query query = afterCheckpoint(lastPhotoId)
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .cursorBatchSize(batchSize);
+        query.fields().include("url", "fileName", "locationEdited", "userId", "latitude", "longitude");
+
+        try (Stream<Photo> photos = mongoTemplate.stream(query, Photo.class)) {
+            Iterator<Photo> iterator = photos.iterator();
+            List<Photo> batch = new ArrayList<>(batchSize);
+            while (!stopRequested && iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() >= batchSize || !iterator.hasNext()) {
+                    processBatch(batch, readers);
+                    batch.clear();
+                }
+            }
+
+            if (shuttingDown) {
+                return;
+            }
+            Update update = new Update().set("status", stopRequested
+                    ? BackfillJob.Status.PAUSED
+                    : BackfillJob.Status.COMPLETED);
+            if (!stopRequested) {
+                update.set("finishedAt", LocalDateTime.now());
+            }
+            mongoTemplate.updateFirst(jobQuery(), update, BackfillJob.class);
+            log.info("Metadata backfill {}", stopRequested ? "paused" : "completed");
+
+        } catch (Exception e) {
+            log.error("Metadata backfill failed", e);
+            if (shuttingDown) {
+                return;
+            }
+            mongoTemplate.updateFirst(jobQuery(), new Update()
+                    .set("status", BackfillJob.Status.FAILED)
+                    .set("error", e.getMessage())
+                    .set("finishedAt", LocalDateTime.now()), BackfillJob.class);
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    /**
+     * Re-read one batch in parallel, write it back and move the checkpoint
+     */
+    private void processBatch(List<Photo> batch, ExecutorService readers) throws InterruptedException {
+        long batchStart = System.nanoTime();
+
+        List<CompletableFuture<PhotoMetadata>> results = new ArrayList<>(batch.size());
+        for (Photo photo : batch) {
+            results.add(CompletableFuture.supplyAsync(() -> readMetadata(photo), readers));
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Photo.class);
+        List<Runnable> tileMoves = new ArrayList<>();
+        Set<String> changedUsers = new HashSet<>();
+        int updated = 0;
+        int failed = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Photo photo = batch.get(i);
+            PhotoMetadata metadata = results.get(i).join();
+            if (metadata == null) {
+                failed++;
+                continue;
+            }
+            Update update = PhotoService.metadataUpdate(photo, metadata);
+            bulk.updateOne(new Query(Criteria.where("_id").is(photo.getId())), update);
+            changedUsers.add(photo.getUserId());
+            if (update.modifies("latitude")) {
+                Double oldLatitude = photo.getLatitude();
+                Double oldLongitude = photo.getLongitude();
+                photo.setLatitude(metadata.getLatitude());
+                photo.setLongitude(metadata.getLongitude());
+                tileMoves.add(() -> photoTileService.move(photo, oldLatitude, oldLongitude));
+            }
+            updated++;
+        }
+        if (updated > 0) {
+            bulk.execute();
+        }
+        tileMoves.forEach(Runnable::run);
+        photoVersionService.bumpAll(changedUsers);
+
+        mongoTemplate.updateFirst(jobQuery(), new Update()
+                .set("lastPhotoId", batch.get(batch.size() - 1).getId())
+                .inc("processed", batch.size())
+                .inc("updated", updated)
+                .inc("failed", failed)
+                .set("checkpointAt", LocalDateTime.now()), BackfillJob.class);
+
+        // Stay under the configured rate so live uploads keep their share of Mongo and disk
+        if (maxPhotosPerSecond > 0) {
+            long minNanos = TimeUnit.SECONDS.toNanos(batch.size()) / maxPhotosPerSecond;
+            long sleepNanos = minNanos - (System.nanoTime() - batchStart);
+            if (sleepNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        }
+    }
+
+    private PhotoMetadata readMetadata(Photo photo) {
+        try {
+            return photoService.readStoredMetadata(photo);
+        } catch (Exception e) {
+            log.warn("Could not re-read metadata of photo {}: {}", photo.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static Query afterCheckpoint(String lastPhotoId) {
+        Query query = new Query();
+        if (lastPhotoId != null) {
+            query.addCriteria(Criteria.where("_id").gt(new ObjectId(lastPhotoId)));
+        }
+        return query;
+    }
+
+    private static Query jobQuery() {
+        return new Query(Criteria.where("_id").is(JOB_ID));
+    }
+}
@@ -0,0 +1,690 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.ClusterDTO;
+import com.geophoto.dto.ClustersResponse;
+import com.geophoto.dto.HeatmapResponse;
+import com.geophoto.dto.MarkersResponse;
+import com.geophoto.dto.NearbyPhotoDTO;
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.PhotosWithinResponse;
+import com.geophoto.dto.TimelineBucketDTO;
+import com.geophoto.dto.TimelineResponse;
+import com.geophoto.entity.Photo;
+import com.geophoto.entity.PhotoTile;
+import com.geophoto.util.BoundingBox;
+import com.geophoto.util.Geohash;
+import com.geophoto.util.HeatmapGrid;
+import com.geophoto.util.MapTile;
+import com.geophoto.util.SpatialIndex;
+import com.geophoto.util.TimeRange;
+import com.geophoto.util.VectorTileEncoder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Photo Geo Service
+ * Viewport queries over the 2dsphere-indexed location field of photos.
+ * While a user's spatial index is cached, the geometry is resolved in
+ * memory and Mongo is only asked for full photos by id. Callers pass the
+ * user's library version from photo_versions (the one their ETag uses),
+ * so an index built before a write on any instance is not served.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PhotoGeoService {
+
+    private final MongoTemplate mongoTemplate;
+    private final PhotoService photoService;
+    private final PhotoTileService photoTileService;
+    private final SpatialIndexCache spatialIndexCache;
+
+    @Value("${app.geo.within-max-results:2000}")
+    private int withinMaxResults;
+
+    @Value("${app.geo.cluster-cell-pixels:60}")
+    private int clusterCellPixels;
+
+    @Value("${app.geo.cluster-max-zoom:17}")
+    private int clusterMaxZoom;
+
+    @Value("${app.geo.nearby-max-results:100}")
+    private int nearbyMaxResults;
+
+    @Value("${app.geo.heatmap-cell-pixels:8}")
+    private int heatmapCellPixels;
+
+    // Cells per viewport side, bounds the response whatever zoom the client sends
+    private static final int MAX_CELLS_PER_SIDE = 64;
+    private static final int MAX_TILES_PER_VIEWPORT = MAX_CELLS_PER_SIDE * MAX_CELLS_PER_SIDE;
+    private static final int HEATMAP_MAX_CELLS_PER_SIDE = 256;
+
+    private static final int MARKER_SCALE = 100_000;
+    private static final String IMAGE_URL_PREFIX = "/api/photos/image/";
+
+    public static final String VECTOR_TILE_LAYER = "photos";
+    private static final int VECTOR_TILE_EXTENT = 4096;
+    // Photo markers near an edge are also drawn by the neighbouring tile, so they are not cut in half
+    private static final double VECTOR_TILE_BUFFER = 64.0 / VECTOR_TILE_EXTENT;
+
+    /**
+     * Capture time granularity of the timeline
+     */
+    public enum TimelineBucket {
+        DAY("%Y-%m-%d"),
+        MONTH("%Y-%m");
+
+        private final String format;
+
+        TimelineBucket(String format) {
+            this.format = format;
+        }
+
+        public static TimelineBucket fromParam(String param) {
+            for (TimelineBucket bucket : values()) {
+                if (bucket.name().equalsIgnoreCase(param)) {
+                    return bucket;
+                }
+            }
+            throw new IllegalArgumentException("bucket must be day or month");
+        }
+    }
+
+    /**
+     * Fill the GeoJSON location of photos stored before the field existed
+     * and drop the location index that lacked takenAt
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLocations() {
+        // Superseded by user_location_taken_at, which also serves time-filtered viewports
+        IndexOperations indexes = mongoTemplate.indexOps(Photo.class);
+        if (indexes.getIndexInfo().stream().anyMatch(index -> "user_location".equals(index.getName()))) {
+            indexes.dropIndex("user_location");
+            log.info("Dropped index user_location");
+        }
+
+        Query query = new Query(Criteria.where("location").exists(false)
+                .and("latitude").gte(-90).lte(90)
+                .and("longitude").gte(-180).lte(180));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("location").toValue(new Document("type", "Point")
+                        .append("coordinates", List.of("$longitude", "$latitude")));
+        long migrated = mongoTemplate.updateMulti(query, update, Photo.class).getModifiedCount();
+        if (migrated > 0) {
+            log.info("Added GeoJSON location to {} photos", migrated);
+        }
+    }
+
+    /**
+     * Photos of a user inside the bounding box, newest first
+     * @param limit maximum number of photos, capped by app.geo.within-max-results
+     */
+    public PhotosWithinResponse findWithin(String userId, long version, BoundingBox box, TimeRange range, Integer limit) {
+        int max = limit == null || limit <= 0 ? withinMaxResults : Math.min(limit, withinMaxResults);
+
+        SpatialIndex index = spatialIndexCache.get(userId, version);
+        if (index != null) {
+            int[] newest = index.newest(search(index, box, range), max + 1);
+            List<String> ids = new ArrayList<>(Math.min(newest.length, max));
+            for (int i = 0; i < newest.length && i < max; i++) {
+                ids.add(index.getId(newest[i]));
+            }
+            return new PhotosWithinResponse(findByIds(ids), newest.length > max);
+        }
+
+        Query query = new Query(withinCriteria(userId, box, range))
+                .with(Sort.by(Sort.Direction.DESC, "takenAt", "_id"))
+                .limit(max + 1);
+        List<Photo> photos = mongoTemplate.find(query, Photo.class);
+
+        boolean truncated = photos.size() > max;
+        List<PhotoDTO> result = photos.stream()
+                .limit(max)
+                .map(photoService::convertToDTO)
+                .collect(Collectors.toList());
+        return new PhotosWithinResponse(result, truncated);
+    }
+
+    /**
+     * Number of photos per capture day or month, oldest first
+     * One $group over the {userId, takenAt} index, or over the viewport
+     * when a box is given. Days are those of the server time zone, the one
+     * takenAt is stored in.
+     * @param box optional viewport
+     */
+    public TimelineResponse getTimeline(String userId, TimelineBucket bucket, BoundingBox box, TimeRange range) {
+        Criteria dated = range.toCriteria();
+        Criteria criteria = box == null
+                ? Criteria.where("userId").is(userId).andOperator(dated)
+                : new Criteria().andOperator(withinCriteria(userId, box, range), dated);
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                context -> new Document("$group", new Document("_id", new Document("$dateToString",
+                        new Document("format", bucket.format)
+                                .append("date", "$takenAt")
+                                .append("timezone", ZoneId.systemDefault().getId())))
+                        .append("count", new Document("$sum", 1))),
+                Aggregation.sort(Sort.Direction.ASC, "_id"));
+
+        List<TimelineBucketDTO> buckets = new ArrayList<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, Photo.class, Document.class)) {
+            buckets.add(new TimelineBucketDTO(row.getString("_id"), ((Number) row.get("count")).longValue()));
+        }
+        return new TimelineResponse(bucket.name().toLowerCase(), buckets);
+    }
+
+    /**
+     * Photos of the same user nearest to one of their photos, the photo itself excluded
+     */
+    public List<NearbyPhotoDTO> findNearbyPhoto(String userId, long version, String photoId, Integer k, Double maxMeters) {
+        Photo photo = mongoTemplate.findById(photoId, Photo.class);
+        if (photo == null || !userId.equals(photo.getUserId())) {
+            throw new RuntimeException("Photo not found with id: " + photoId);
+        }
+        if (photo.getLocation() == null) {
+            throw new IllegalArgumentException("Photo has no location: " + photoId);
+        }
+        return findNear(userId, version, photo.getLatitude(), photo.getLongitude(), k, maxMeters, photo.getId());
+    }
+
+    /**
+     * Photos of a user nearest to a point, closest first
+     * Runs a $geoNear on the {userId, location} 2dsphere index, so only the
+     * k closest candidates are read.
+     * @param maxMeters optional search radius
+     * @param excludeId optional photo to leave out
+     */
+    public List<NearbyPhotoDTO> findNear(String userId, long version, double latitude, double longitude,
+                                         Integer k, Double maxMeters, String excludeId) {
+        if (Photo.toLocation(latitude, longitude) == null) {
+            throw new IllegalArgumentException("Invalid coordinates");
+        }
+        int limit = k == null || k <= 0 ? 10 : Math.min(k, nearbyMaxResults);
+
+        SpatialIndex index = spatialIndexCache.get(userId, version);
+        if (index != null) {
+            return findNear(index, latitude, longitude, limit, maxMeters, excludeId);
+        }
+
+        Document filter = new Document("userId", userId);
+        if (excludeId != null) {
+            filter.append("_id", new Document("$ne", new ObjectId(excludeId)));
+        }
+        Document geoNear = new Document("near", new Document("type", "Point")
+                .append("coordinates", List.of(longitude, latitude)))
+                .append("distanceField", "distanceMeters")
+                .append("key", "location")
+                .append("spherical", true)
+                .append("query", filter);
+        if (maxMeters != null && maxMeters > 0) {
+            geoNear.append("maxDistance", maxMeters);
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                context -> new Document("$geoNear", geoNear),
+                Aggregation.limit(limit));
+        String collection = mongoTemplate.getCollectionName(Photo.class);
+
+        List<NearbyPhotoDTO> result = new ArrayList<>(limit);
+        for (Document document : mongoTemplate.aggregate(aggregation, collection, Document.class)) {
+            double distance = ((Number) document.remove("distanceMeters")).doubleValue();
+            Photo photo = mongoTemplate.getConverter().read(Photo.class, document);
+            result.add(new NearbyPhotoDTO(photoService.convertToDTO(photo), distance));
+        }
+        return result;
+    }
+
+    private List<NearbyPhotoDTO> findNear(SpatialIndex index, double latitude, double longitude,
+                                          int limit, Double maxMeters, String excludeId) {
+        List<String> ids = new ArrayList<>(limit + 1);
+        Map<String, Double> distances = new HashMap<>();
+        for (int point : index.nearest(latitude, longitude, excludeId == null ? limit : limit + 1, maxMeters)) {
+            String id = index.getId(point);
+            if (!id.equals(excludeId) && ids.size() < limit) {
+                ids.add(id);
+                distances.put(id, index.distanceMeters(point, latitude, longitude));
+            }
+        }
+        List<NearbyPhotoDTO> result = new ArrayList<>(ids.size());
+        for (PhotoDTO photo : findByIds(ids)) {
+            result.add(new NearbyPhotoDTO(photo, distances.get(photo.getId())));
+        }
+        return result;
+    }
+
+    /**
+     * Compact markers of a user's located photos, optionally limited to a box
+     * Only id, coordinates and thumbnail are read (field projection on raw
+     * documents), in {userId, geohash} index order.
+     */
+    public MarkersResponse getMarkers(String userId, long version, BoundingBox box) {
+        SpatialIndex index = spatialIndexCache.get(userId, version);
+        if (index != null) {
+            return markersFromIndex(index, box);
+        }
+
+        Criteria criteria = box == null
+                ? Criteria.where("userId").is(userId).and("geohash").exists(true)
+                : withinCriteria(userId, box);
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "geohash"));
+        query.fields().include("latitude", "longitude", "thumbnailUrl");
+
+        List<String> ids = new ArrayList<>();
+        List<String> thumbnails = new ArrayList<>();
+        int[] latitudes = new int[64];
+        int[] longitudes = new int[64];
+        int count = 0;
+        String collection = mongoTemplate.getCollectionName(Photo.class);
+        for (Document photo : mongoTemplate.find(query, Document.class, collection)) {
+            Number latitude = photo.get("latitude", Number.class);
+            Number longitude = photo.get("longitude", Number.class);
+            if (latitude == null || longitude == null) {
+                continue;
+            }
+            if (count == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, count * 2);
+                longitudes = Arrays.copyOf(longitudes, count * 2);
+            }
+            latitudes[count] = (int) Math.round(latitude.doubleValue() * MARKER_SCALE);
+            longitudes[count] = (int) Math.round(longitude.doubleValue() * MARKER_SCALE);
+            ids.add(photo.getObjectId("_id").toHexString());
+            thumbnails.add(thumbnailKey(photo.getString("thumbnailUrl")));
+            count++;
+        }
+        return markers(count, ids, thumbnails, latitudes, longitudes);
+    }
+
+    /**
+     * Markers in index order, which keeps neighbouring photos together like the geohash order
+     */
+    private MarkersResponse markersFromIndex(SpatialIndex index, BoundingBox box) {
+        int[] points;
+        if (box == null) {
+            points = new int[index.size()];
+            Arrays.setAll(points, i -> i);
+        } else {
+            points = index.search(box);
+            Arrays.sort(points);
+        }
+        List<String> ids = new ArrayList<>(points.length);
+        List<String> thumbnails = new ArrayList<>(points.length);
+        int[] latitudes = new int[points.length];
+        int[] longitudes = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            latitudes[i] = (int) Math.round(index.getLatitude(points[i]) * MARKER_SCALE);
+            longitudes[i] = (int) Math.round(index.getLongitude(points[i]) * MARKER_SCALE);
+            ids.add(index.getId(points[i]));
+            thumbnails.add(thumbnailKey(index.getThumbnailUrl(points[i])));
+        }
+        return markers(points.length, ids, thumbnails, latitudes, longitudes);
+    }
+
+    /**
+     * Delta-encode the fixed-point coordinates in place
+     */
+    private static MarkersResponse markers(int count, List<String> ids, List<String> thumbnails,
+                                           int[] latitudes, int[] longitudes) {
+        int previousLat = 0;
+        int previousLon = 0;
+        for (int i = 0; i < count; i++) {
+            int lat = latitudes[i];
+            int lon = longitudes[i];
+            latitudes[i] = lat - previousLat;
+            longitudes[i] = lon - previousLon;
+            previousLat = lat;
+            previousLon = lon;
+        }
+        return new MarkersResponse(count, MARKER_SCALE, IMAGE_URL_PREFIX, ids, thumbnails,
+                Arrays.copyOf(latitudes, count), Arrays.copyOf(longitudes, count));
+    }
+
+    private static String thumbnailKey(String thumbnailUrl) {
+        return thumbnailUrl != null && thumbnailUrl.startsWith(IMAGE_URL_PREFIX)
+                ? thumbnailUrl.substring(IMAGE_URL_PREFIX.length())
+                : thumbnailUrl;
+    }
+
+    /**
+     * Clusters of a user's photos in the viewport
+     * Photos are grouped on a grid of roughly clusterCellPixels screen pixels
+     * aligned to the world, so cells stay stable while panning. A cached
+     * spatial index is grouped in memory; otherwise, once the photo_tiles
+     * aggregates are built, they are read instead of the photos. Tiles hold
+     * no capture times, a time range always groups the photos.
+     * From clusterMaxZoom on the photos themselves are returned.
+     */
+    public ClustersResponse findClusters(String userId, long version, BoundingBox box, TimeRange range, int zoom) {
+        if (zoom < 0 || zoom > 24) {
+            throw new IllegalArgumentException("zoom must be between 0 and 24");
+        }
+        if (zoom >= clusterMaxZoom) {
+            PhotosWithinResponse within = findWithin(userId, version, box, range, null);
+            return new ClustersResponse(zoom, List.of(), within.getPhotos(), within.isTruncated());
+        }
+
+        double centerLat = (box.getMinLat() + box.getMaxLat()) / 2;
+        double cellLon = Math.max(360.0 * clusterCellPixels / (256.0 * Math.pow(2, zoom)),
+                box.getWidth() / MAX_CELLS_PER_SIDE);
+        // Web Mercator stretches latitude by 1/cos, keep cells roughly square on screen
+        double cellLat = Math.max(cellLon * Math.max(Math.cos(Math.toRadians(centerLat)), 0.05),
+                box.getHeight() / MAX_CELLS_PER_SIDE);
+
+        SpatialIndex index = spatialIndexCache.get(userId, version);
+        if (index != null) {
+            return new ClustersResponse(zoom, clustersFromIndex(index, box, range, cellLon, cellLat), List.of(), false);
+        }
+        if (photoTileService.isReady() && !range.isBounded()) {
+            return new ClustersResponse(zoom, clustersFromTiles(userId, box, cellLon), List.of(), false);
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(withinCriteria(userId, box, range)),
+                context -> new Document("$group", new Document("_id", new Document()
+                        .append("x", cellIndex("$longitude", 180, cellLon))
+                        .append("y", cellIndex("$latitude", 90, cellLat)))
+                        .append("count", new Document("$sum", 1))
+                        .append("sumLat", new Document("$sum", "$latitude"))
+                        .append("sumLon", new Document("$sum", "$longitude"))
+                        .append("minLat", new Document("$min", "$latitude"))
+                        .append("minLon", new Document("$min", "$longitude"))
+                        .append("maxLat", new Document("$max", "$latitude"))
+                        .append("maxLon", new Document("$max", "$longitude"))
+                        .append("newest", new Document("$top", new Document()
+                                .append("sortBy", new Document("takenAt", -1).append("_id", -1))
+                                .append("output", new Document("id", "$_id")
+                                        .append("thumbnailUrl", "$thumbnailUrl"))))));
+
+        List<ClusterDTO> clusters = new ArrayList<>();
+        for (Document cell : mongoTemplate.aggregate(aggregation, Photo.class, Document.class)) {
+            long count = ((Number) cell.get("count")).longValue();
+            Document newest = cell.get("newest", Document.class);
+            clusters.add(new ClusterDTO(count,
+                    ((Number) cell.get("sumLat")).doubleValue() / count,
+                    ((Number) cell.get("sumLon")).doubleValue() / count,
+                    cell.getDouble("minLat"), cell.getDouble("minLon"),
+                    cell.getDouble("maxLat"), cell.getDouble("maxLon"),
+                    newest.getObjectId("id").toHexString(), newest.getString("thumbnailUrl")));
+        }
+        return new ClustersResponse(zoom, clusters, List.of(), false);
+    }
+
+    /**
+     * Photo density grid of the viewport
+     * Counted from the cached spatial index, from the photo_tiles aggregates
+     * (tile centroids, at most one tile per few grid cells) or with a $group
+     * on the Mercator cell of each photo, in that order of preference. The
+     * response size depends on the grid only.
+     */
+    public HeatmapResponse getHeatmap(String userId, long version, BoundingBox box, TimeRange range, int zoom) {
+        HeatmapGrid grid = new HeatmapGrid(box, zoom, heatmapCellPixels, HEATMAP_MAX_CELLS_PER_SIDE);
+
+        SpatialIndex index = spatialIndexCache.get(userId, version);
+        if (index != null) {
+            for (int point : search(index, box, range)) {
+                grid.add(index.getLatitude(point), index.getLongitude(point), 1);
+            }
+        } else if (photoTileService.isReady() && !range.isBounded()) {
+            double cellLon = grid.getCellPixels() / grid.getWorldPixels() * 360;
+            int precision = 1;
+            while (precision < PhotoTileService.MAX_PRECISION && Geohash.cellWidth(precision) > cellLon
+                    && Geohash.coveringSize(box, precision + 1) <= MAX_TILES_PER_VIEWPORT) {
+                precision++;
+            }
+            for (PhotoTile tile : photoTileService.findTiles(userId, box, precision)) {
+                grid.add(tile.getSumLat() / tile.getCount(), tile.getSumLon() / tile.getCount(), tile.getCount());
+            }
+        } else {
+            double cellScale = grid.getWorldPixels() / grid.getCellPixels();
+            Document latitude = new Document("$degreesToRadians", new Document("$max", List.of(-HeatmapGrid.MAX_LATITUDE,
+                    new Document("$min", List.of(HeatmapGrid.MAX_LATITUDE, "$latitude")))));
+            // Web Mercator: y = (1 - ln(tan(lat) + sec(lat)) / pi) / 2
+            Document mercatorY = new Document("$divide", List.of(new Document("$subtract", List.of(1,
+                    new Document("$divide", List.of(new Document("$ln", new Document("$add", List.of(
+                            new Document("$tan", latitude),
+                            new Document("$divide", List.of(1, new Document("$cos", latitude)))))), Math.PI)))), 2));
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(withinCriteria(userId, box, range)),
+                    context -> new Document("$group", new Document("_id", new Document()
+                            .append("x", new Document("$floor", new Document("$multiply", List.of(
+                                    new Document("$divide", List.of(new Document("$add", List.of("$longitude", 180)), 360)),
+                                    cellScale))))
+                            .append("y", new Document("$floor", new Document("$multiply", List.of(mercatorY, cellScale)))))
+                            .append("count", new Document("$sum", 1))));
+            for (Document cell : mongoTemplate.aggregate(aggregation, Photo.class, Document.class)) {
+                Document id = cell.get("_id", Document.class);
+                grid.addCell(((Number) id.get("x")).longValue(), ((Number) id.get("y")).longValue(),
+                        ((Number) cell.get("count")).longValue());
+            }
+        }
+
+        return new HeatmapResponse(zoom, grid.getCellPixels(), grid.getColumns(), grid.getRows(),
+                grid.getWest(), grid.getSouth(), grid.getEast(), grid.getNorth(),
+                grid.getTotal(), grid.getMaxCount(), HeatmapGrid.ENCODING, grid.encode());
+    }
+
+    /**
+     * Mapbox vector tile of a user's photos
+     * Below clusterMaxZoom each cluster is a point drawn by the one tile
+     * containing its centroid; from there on every photo is a point.
+     * Points carry count, photoId and thumbnailUrl.
+     */
+    public byte[] renderVectorTile(String userId, long version, MapTile tile, TimeRange range) {
+        VectorTileEncoder encoder = new VectorTileEncoder(VECTOR_TILE_LAYER, VECTOR_TILE_EXTENT);
+        
+        if (tile.getZ() >= clusterMaxZoom) {
+            BoundingBox buffered = tile.toBoundingBox(VECTOR_TILE_BUFFER);
+            SpatialIndex index = spatialIndexCache.get(userId, version);
+            if (index != null) {
+                for (int point : index.newest(search(index, buffered, range), withinMaxResults)) {
+                    addPoint(encoder, tile, index.getLatitude(point), index.getLongitude(point),
+                            1, index.getId(point), index.getThumbnailUrl(point));
+                }
+                return encoder.encode();
+            }
+            for (PhotoDTO photo : findWithin(userId, version, buffered, range, null).getPhotos()) {
+                addPoint(encoder, tile, photo.getLatitude(), photo.getLongitude(),
+                        1, photo.getId(), photo.getThumbnailUrl());
+            }
+        } else {
+            BoundingBox bounds = tile.toBoundingBox(0);
+            for (ClusterDTO cluster : findClusters(userId, version, bounds, range, tile.getZ()).getClusters()) {
+                if (bounds.contains(cluster.getLatitude(), cluster.getLongitude())) {
+                    addPoint(encoder, tile, cluster.getLatitude(), cluster.getLongitude(),
+                            cluster.getCount(), cluster.getPhotoId(), cluster.getThumbnailUrl());
+                }
+            }
+        }
+        return encoder.encode();
+    }
+    
+    private static void addPoint(VectorTileEncoder encoder, MapTile tile, double latitude, double longitude,
+                                 long count, String photoId, String thumbnailUrl) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("count", count);
+        properties.put("photoId", photoId);
+        properties.put("thumbnailUrl", thumbnailUrl);
+        encoder.addPoint((int) Math.round(tile.toPixelX(longitude, encoder.getExtent())),
+                (int) Math.round(tile.toPixelY(latitude, encoder.getExtent())), properties);
+    }
+
+    private static int[] search(SpatialIndex index, BoundingBox box, TimeRange range) {
+        return range.isBounded()
+                ? index.search(box, range.fromMillis(), range.toMillisInclusive())
+                : index.search(box);
+    }
+
+    /**
+     * Same grid as the $group path, accumulated over the index
+     */
+    private static List<ClusterDTO> clustersFromIndex(SpatialIndex index, BoundingBox box, TimeRange range,
+                                                      double cellLon, double cellLat) {
+        Map<Long, GridCell> cells = new HashMap<>();
+        for (int point : search(index, box, range)) {
+            double latitude = index.getLatitude(point);
+            double longitude = index.getLongitude(point);
+            long x = (long) Math.floor((longitude + 180) / cellLon);
+            long y = (long) Math.floor((latitude + 90) / cellLat);
+            GridCell cell = cells.computeIfAbsent(x << 32 | y, key -> new GridCell(point));
+            cell.add(index, point, latitude, longitude);
+        }
+
+        List<ClusterDTO> clusters = new ArrayList<>(cells.size());
+        for (GridCell cell : cells.values()) {
+            clusters.add(new ClusterDTO(cell.count,
+                    cell.sumLat / cell.count, cell.sumLon / cell.count,
+                    cell.minLat, cell.minLon, cell.maxLat, cell.maxLon,
+                    index.getId(cell.newest), index.getThumbnailUrl(cell.newest)));
+        }
+        return clusters;
+    }
+
+    private static class GridCell {
+        long count;
+        double sumLat;
+        double sumLon;
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        int newest;
+
+        GridCell(int first) {
+            this.newest = first;
+        }
+
+        void add(SpatialIndex index, int point, double latitude, double longitude) {
+            count++;
+            sumLat += latitude;
+            sumLon += longitude;
+            minLat = Math.min(minLat, latitude);
+            minLon = Math.min(minLon, longitude);
+            maxLat = Math.max(maxLat, latitude);
+            maxLon = Math.max(maxLon, longitude);
+            if (index.compareRecency(point, newest) > 0) {
+                newest = point;
+            }
+        }
+    }
+
+    /**
+     * Photos by id in the order of the ids, missing ones skipped
+     */
+    private List<PhotoDTO> findByIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Photo> photos = new HashMap<>();
+        for (Photo photo : mongoTemplate.find(new Query(Criteria.where("_id").in(ids)), Photo.class)) {
+            photos.put(photo.getId(), photo);
+        }
+        return ids.stream()
+                .map(photos::get)
+                .filter(Objects::nonNull)
+                .map(photoService::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Clusters from the finest tile precision whose cells are at least one grid cell wide
+     */
+    private List<ClusterDTO> clustersFromTiles(String userId, BoundingBox box, double cellLon) {
+        int precision = 1;
+        for (int p = PhotoTileService.MAX_PRECISION; p > 1; p--) {
+            if (Geohash.cellWidth(p) >= cellLon && Geohash.coveringSize(box, p) <= MAX_TILES_PER_VIEWPORT) {
+                precision = p;
+                break;
+            }
+        }
+        List<PhotoTile> tiles = photoTileService.findTiles(userId, box, precision);
+        
+        List<String> newestIds = tiles.stream()
+                .map(PhotoTile::getNewestPhotoId)
+                .filter(Objects::nonNull)
+                .toList();
+        Query thumbnails = new Query(Criteria.where("_id").in(newestIds));
+        thumbnails.fields().include("thumbnailUrl");
+        Map<String, String> thumbnailUrls = new HashMap<>();
+        for (Photo photo : mongoTemplate.find(thumbnails, Photo.class)) {
+            thumbnailUrls.put(photo.getId(), photo.getThumbnailUrl());
+        }
+        
+        List<ClusterDTO> clusters = new ArrayList<>(tiles.size());
+        for (PhotoTile tile : tiles) {
+            clusters.add(new ClusterDTO(tile.getCount(),
+                    tile.getSumLat() / tile.getCount(), tile.getSumLon() / tile.getCount(),
+                    tile.getMinLat(), tile.getMinLon(), tile.getMaxLat(), tile.getMaxLon(),
+                    tile.getNewestPhotoId(), thumbnailUrls.get(tile.getNewestPhotoId())));
+        }
+        return clusters;
+    }
+
+    private static Document cellIndex(String field, double offset, double cellSize) {
+        return new Document("$floor", new Document("$divide", List.of(
+                new Document("$add", List.of(field, offset)), cellSize)));
+    }
+
+    /**
+     * Criteria matching photos of a user inside the box
+     * The 2dsphere index narrows the candidates, exact latitude/longitude
+     * ranges drop what the padded polygons let through.
+     */
+    public static Criteria withinCriteria(String userId, BoundingBox box) {
+        return withinCriteria(userId, box, TimeRange.UNBOUNDED);
+    }
+
+    /**
+     * Criteria matching photos of a user inside the box and time range
+     * takenAt is the last key of the {userId, location, takenAt} index, so the
+     * range is checked during the index scan.
+     */
+    public static Criteria withinCriteria(String userId, BoundingBox box, TimeRange range) {
+        List<Criteria> filters = new ArrayList<>();
+
+        if (box.isWorldWide()) {
+            filters.add(Criteria.where("location").exists(true));
+        } else {
+            List<Criteria> geo = new ArrayList<>();
+            for (GeoJsonPolygon polygon : box.toPolygons()) {
+                geo.add(Criteria.where("location").within(polygon));
+            }
+            filters.add(geo.size() == 1 ? geo.get(0) : new Criteria().orOperator(geo));
+
+            List<Criteria> longitude = new ArrayList<>();
+            for (double[] lonRange : box.getLongitudeRanges()) {
+                longitude.add(Criteria.where("longitude").gte(lonRange[0]).lte(lonRange[1]));
+            }
+            filters.add(longitude.size() == 1 ? longitude.get(0) : new Criteria().orOperator(longitude));
+        }
+        filters.add(Criteria.where("latitude").gte(box.getMinLat()).lte(box.getMaxLat()));
+        if (range.isBounded()) {
+            filters.add(range.toCriteria());
+        }
+
+        return Criteria.where("userId").is(userId).andOperator(filters);
+    }
+}
@@ -0,0 +1,222 @@
+package com.geophoto.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.PhotoPageResponse;
+import com.geophoto.entity.Photo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Photo List Service
+ * Lists a user's photos newest first, either one keyset page at a time or
+ * streamed straight from a Mongo cursor, so memory use does not grow with
+ * the size of the library. Both orders are backed by {userId, field, _id}
+ * indexes.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PhotoListService {
+
+    private static final int STREAM_BATCH_SIZE = 200;
+
+    /**
+     * Photos written between flushes: one network write per cursor batch
+     * instead of one per photo, while clients still get rows as they stream
+     */
+    private static final int FLUSH_EVERY = STREAM_BATCH_SIZE;
+
+    private final MongoTemplate mongoTemplate;
+    private final PhotoService photoService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.list.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${app.list.max-page-size:500}")
+    private int maxPageSize;
+
+    /**
+     * Sort orders available to clients, always descending with _id as tie-breaker
+     */
+    public enum SortField {
+        UPLOADED_AT("uploadedAt"),
+        TAKEN_AT("takenAt");
+
+        private final String field;
+
+        SortField(String field) {
+            this.field = field;
+        }
+
+        public static SortField fromParam(String param) {
+            for (SortField sort : values()) {
+                if (sort.field.equals(param)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("sort must be uploadedAt or takenAt");
+        }
+    }
+
+    /**
+     * One page of photos after the cursor
+     * @param cursor nextCursor of the previous page, null for the first page
+     */
+    public PhotoPageResponse getPage(String userId, boolean gpsOnly, SortField sort, String cursor, Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+
+        Criteria criteria = baseCriteria(userId, gpsOnly);
+        if (cursor != null && !cursor.isBlank()) {
+            criteria = new Criteria().andOperator(criteria, after(sort, cursor));
+        }
+        Query query = new Query(criteria).with(order(sort)).limit(pageSize + 1);
+        List<Photo> photos = mongoTemplate.find(query, Photo.class);
+
+        String nextCursor = null;
+        if (photos.size() > pageSize) {
+            photos = photos.subList(0, pageSize);
+            nextCursor = encodeCursor(sort, photos.get(pageSize - 1));
+        }
+        List<PhotoDTO> page = photos.stream()
+                .map(photoService::convertToDTO)
+                .collect(Collectors.toList());
+        return new PhotoPageResponse(page, nextCursor);
+    }
+
+    /**
+     * Write all photos as one JSON array, element by element
+     */
+    public void writeJsonArray(String userId, boolean gpsOnly, SortField sort, OutputStream out) throws IOException {
+        ObjectWriter writer = elementWriter();
+        try (JsonGenerator generator = createGenerator(out)) {
+            generator.writeStartArray();
+            try (Stream<Photo> photos = stream(userId, gpsOnly, sort)) {
+                int written = 0;
+                for (Photo photo : (Iterable<Photo>) photos::iterator) {
+                    writer.writeValue(generator, photoService.convertToDTO(photo));
+                    if (++written % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Write all photos as newline-delimited JSON, one photo per line
+     */
+    public void writeNdjson(String userId, boolean gpsOnly, SortField sort, OutputStream out) throws IOException {
+        ObjectWriter writer = elementWriter();
+        try (JsonGenerator generator = createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            try (Stream<Photo> photos = stream(userId, gpsOnly, sort)) {
+                int written = 0;
+                for (Photo photo : (Iterable<Photo>) photos::iterator) {
+                    writer.writeValue(generator, photoService.convertToDTO(photo));
+                    generator.writeRaw('\n');
+                    if (++written % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                }
+            }
+        }
+    }
+
+    private Stream<Photo> stream(String userId, boolean gpsOnly, SortField sort) {
+        Query query = new Query(baseCriteria(userId, gpsOnly))
+                .with(order(sort))
+                .cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, Photo.class);
+    }
+
+    /**
+     * Writer for one element, without the flush writeValue does by default (closing the generator flushes the rest)
+     */
+    private ObjectWriter elementWriter() {
+        return objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        // The servlet container owns the response stream
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    private static Criteria baseCriteria(String userId, boolean gpsOnly) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (gpsOnly) {
+            criteria.and("latitude").ne(null).and("longitude").ne(null);
+        }
+        return criteria;
+    }
+
+    private static Sort order(SortField sort) {
+        return Sort.by(Sort.Direction.DESC, sort.field, "_id");
+    }
+
+    /**
+     * Photos sorting after the cursor position
+     * Descending order puts photos without a value last, after every dated photo.
+     */
+    private static Criteria after(SortField sort, String cursor) {
+        String[] parts = decodeCursor(sort, cursor);
+        ObjectId lastId = new ObjectId(parts[2]);
+        if (parts[1].isEmpty()) {
+            return Criteria.where(sort.field).is(null).and("_id").lt(lastId);
+        }
+        LocalDateTime lastValue = LocalDateTime.parse(parts[1]);
+        return new Criteria().orOperator(
+                Criteria.where(sort.field).lt(lastValue),
+                Criteria.where(sort.field).is(lastValue).and("_id").lt(lastId),
+                Criteria.where(sort.field).is(null));
+    }
+
+    private static String encodeCursor(SortField sort, Photo last) {
+        LocalDateTime value = sort == SortField.TAKEN_AT ? last.getTakenAt() : last.getUploadedAt();
+        String raw = sort.field + "|" + (value == null ? "" : value.toString()) + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return sort field, value (empty when null) and photo id
+     */
+    private static String[] decodeCursor(SortField sort, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length == 3 && parts[0].equals(sort.field) && ObjectId.isValid(parts[2])) {
+                if (!parts[1].isEmpty()) {
+                    LocalDateTime.parse(parts[1]);
+                }
+                return parts;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+}
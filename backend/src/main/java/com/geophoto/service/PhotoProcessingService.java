@@ -0,0 +1,203 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Photo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Photo Processing Service
+ * Background post-processing queue driven by the processingStatus field of
+ * the photos collection. Work is claimed atomically with findAndModify, so
+ * queued photos survive restarts and several backend instances can share
+ * the queue.
+ */
+@Service
+@Slf4j
+public class PhotoProcessingService {
+    
+    private final MongoTemplate mongoTemplate;
+    private final PhotoService photoService;
+    private final ThumbnailService thumbnailService;
+    private final PhotoTileService photoTileService;
+    private final PhotoVersionService photoVersionService;
+    private final ThreadPoolTaskExecutor executor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    @Value("${app.processing.workers:2}")
+    private int workers;
+    
+    @Value("${app.processing.max-attempts:3}")
+    private int maxAttempts;
+    
+    @Value("${app.processing.stale-after-ms:300000}")
+    private long staleAfterMs;
+    
+    public PhotoProcessingService(MongoTemplate mongoTemplate,
+                                  PhotoService photoService,
+                                  ThumbnailService thumbnailService,
+                                  PhotoTileService photoTileService,
+                                  PhotoVersionService photoVersionService,
+                                  @Qualifier("photoProcessingExecutor") ThreadPoolTaskExecutor executor) {
+        this.mongoTemplate = mongoTemplate;
+        this.photoService = photoService;
+        this.thumbnailService = thumbnailService;
+        this.photoTileService = photoTileService;
+        this.photoVersionService = photoVersionService;
+        this.executor = executor;
+    }
+    
+    /**
+     * Claim pending photos while there are idle workers
+     */
+    @Scheduled(fixedDelayString = "${app.processing.poll-interval-ms:1000}")
+    public void pollQueue() {
+        while (inFlight.get() < workers) {
+            Photo photo = claimNext();
+            if (photo == null) {
+                return;
+            }
+            // processingStatus is part of the photo lists
+            photoVersionService.bump(photo.getUserId());
+            inFlight.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        process(photo);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.decrementAndGet();
+                release(photo, e);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Return photos stuck in PROCESSING (e.g. after a crash) to the queue
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.processing.stale-check-interval-ms:60000}")
+    public void requeueStale() {
+        Query query = new Query(Criteria.where("processingStatus").is(Photo.ProcessingStatus.PROCESSING)
+                .and("processingStartedAt").lt(LocalDateTime.now().minus(Duration.ofMillis(staleAfterMs))));
+        Update update = new Update().set("processingStatus", Photo.ProcessingStatus.PENDING);
+        List<String> userIds = mongoTemplate.findDistinct(query, "userId", Photo.class, String.class);
+        long requeued = mongoTemplate.updateMulti(query, update, Photo.class).getModifiedCount();
+        photoVersionService.bumpAll(userIds);
+        if (requeued > 0) {
+            log.warn("Requeued {} photos stuck in processing", requeued);
+        }
+    }
+    
+    /**
+     * Atomically move the oldest pending photo to PROCESSING
+     */
+    private Photo claimNext() {
+        Query query = new Query(Criteria.where("processingStatus").is(Photo.ProcessingStatus.PENDING))
+                .with(Sort.by(Sort.Direction.ASC, "uploadedAt"));
+        Update update = new Update()
+                .set("processingStatus", Photo.ProcessingStatus.PROCESSING)
+                .set("processingStartedAt", LocalDateTime.now())
+                .inc("processingAttempts", 1);
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), Photo.class);
+    }
+    
+    /**
+     * Run all post-processing steps for one photo
+     */
+    private void process(Photo photo) {
+        log.info("Processing photo {} (attempt {})", photo.getId(), photo.getProcessingAttempts());
+        try {
+            Double oldLatitude = photo.getLatitude();
+            Double oldLongitude = photo.getLongitude();
+            Update update = Boolean.TRUE.equals(photo.getMetadataExtracted())
+                    ? new Update()
+                    : PhotoService.metadataUpdate(photo, photoService.extractMetadataFromStorage(photo));
+            
+            try (InputStream original = photoService.openOriginal(photo)) {
+                String thumbnailUrl = thumbnailService.generateThumbnails(photo, original);
+                setIfPresent(update, "thumbnailUrl", thumbnailUrl);
+            }
+            
+            update.set("processingStatus", Photo.ProcessingStatus.DONE)
+                    .unset("processingError");
+            boolean saved = mongoTemplate.updateFirst(claimedBy(photo), update, Photo.class).getMatchedCount() > 0;
+            if (saved && update.modifies("latitude")) {
+                photoTileService.move(photo, oldLatitude, oldLongitude);
+            }
+            if (saved) {
+                photoVersionService.bump(photo.getUserId());
+            }
+            log.info("Finished processing photo {}", photo.getId());
+            
+        } catch (Exception e) {
+            log.error("Error processing photo {}", photo.getId(), e);
+            release(photo, e);
+        }
+    }
+    
+    /**
+     * Queue every finished photo that still uses its original as thumbnail
+     * @return number of photos queued
+     */
+    public long requeueMissingThumbnails() {
+        Query query = new Query(Criteria.where("thumbnailUrl").not().regex("_marker\\.jpg$")
+                .and("processingStatus").nin(Photo.ProcessingStatus.PENDING, Photo.ProcessingStatus.PROCESSING));
+        Update update = new Update()
+                .set("processingStatus", Photo.ProcessingStatus.PENDING)
+                .set("processingAttempts", 0);
+        List<String> userIds = mongoTemplate.findDistinct(query, "userId", Photo.class, String.class);
+        long queued = mongoTemplate.updateMulti(query, update, Photo.class).getModifiedCount();
+        photoVersionService.bumpAll(userIds);
+        log.info("Queued {} photos for thumbnail backfill", queued);
+        return queued;
+    }
+    
+    private static void setIfPresent(Update update, String key, Object value) {
+        if (value != null) {
+            update.set(key, value);
+        }
+    }
+    
+    /**
+     * Put a failed photo back in the queue, or mark it FAILED after max attempts
+     */
+    private void release(Photo photo, Exception e) {
+        Photo.ProcessingStatus status = photo.getProcessingAttempts() >= maxAttempts
+                ? Photo.ProcessingStatus.FAILED
+                : Photo.ProcessingStatus.PENDING;
+        Update update = new Update()
+                .set("processingStatus", status)
+                .set("processingError", e.getMessage());
+        mongoTemplate.updateFirst(claimedBy(photo), update, Photo.class);
+        photoVersionService.bump(photo.getUserId());
+    }
+    
+    /**
+     * Match the photo only while it is still claimed by this attempt
+     */
+    private Query claimedBy(Photo photo) {
+        return new Query(Criteria.where("_id").is(photo.getId())
+                .and("processingStatus").is(Photo.ProcessingStatus.PROCESSING)
+                .and("processingAttempts").is(photo.getProcessingAttempts()));
+    }
+}
@@ -1,29 +1,54 @@
 package com.geophoto.service;
 
 import com.drew.imaging.ImageProcessingException;
-import com.drew.lang.GeoLocation;
+import com.geophoto.dto.BatchUploadResponse;
+import com.geophoto.dto.BatchUploadResult;
 import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.ProcessingStatusResponse;
 import com.geophoto.entity.Photo;
+import com.geophoto.entity.PhotoBlob;
 import com.geophoto.entity.User;
 import com.geophoto.repository.PhotoRepository;
 import com.geophoto.util.GpsExtractor;
+import com.geophoto.util.GridFsFileResource;
+import com.geophoto.util.PhotoMetadata;
+import com.geophoto.util.PrefixCapturingInputStream;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.model.GridFSFile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.lang.NonNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 /**
@@ -38,29 +63,32 @@ public class PhotoService {
     
     private final PhotoRepository photoRepository;
     private final org.springframework.data.mongodb.gridfs.GridFsTemplate gridFsTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final ThumbnailService thumbnailService;
+    private final PhotoTileService photoTileService;
+    private final PhotoVersionService photoVersionService;
+    private final BlobDiskCache blobDiskCache;
+    private final SpriteService spriteService;
+    private final ExecutorService photoIngestExecutor;
     
     @Value("${app.upload.dir}")
     private String uploadDir;
     
-    /**
-     * Get all photos with GPS coordinates for a specific user
-     */
-    public List<PhotoDTO> getPhotosWithGpsByUser(String userId) {
-        List<Photo> photos = photoRepository.findByUserIdAndLatitudeIsNotNullAndLongitudeIsNotNull(userId);
-        return photos.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-    }
+    @Value("${app.upload.metadata-prefix-bytes:262144}")
+    private int metadataPrefixBytes;
+    
+    @Value("${app.upload.batch-parallelism:4}")
+    private int batchParallelism;
     
     /**
-     * Get all photos for a specific user
+     * Per-file limit, checked here so one large file fails on its own in a
+     * batch instead of rejecting the whole multipart request
      */
-    public List<PhotoDTO> getAllPhotosByUser(String userId) {
-        List<Photo> photos = photoRepository.findByUserId(userId);
-        return photos.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-    }
+    @Value("${app.upload.max-file-size:10MB}")
+    private DataSize maxFileSize;
+    
+    @Value("${spring.data.mongodb.gridfs.bucket:fs}")
+    private String bucket;
     
     /**
      * Get all photos with GPS coordinates (legacy - for admin)
@@ -102,76 +130,153 @@ public class PhotoService {
      * @throws RuntimeException if file upload or processing fails
      */
     public PhotoDTO uploadPhoto(MultipartFile file, String description, User user) {
+        Photo savedPhoto = saveReferencing(ingestPhoto(file, description, user), null);
+        photoTileService.add(savedPhoto);
+        photoVersionService.bump(savedPhoto.getUserId());
+        log.info("Photo saved to database with ID: {}", savedPhoto.getId());
+        return convertToDTO(savedPhoto);
+    }
+    
+    /**
+     * Upload many photos in one request
+     * Files are ingested in parallel (at most app.upload.batch-parallelism at a
+     * time) and all resulting documents are written with a single bulk insert.
+     * 
+     * @param files MultipartFiles uploaded from client
+     * @param description Optional description applied to every photo
+     * @param user The user uploading the photos
+     * @return one result per file, in request order
+     */
+    public BatchUploadResponse uploadPhotos(List<MultipartFile> files, String description, User user) {
+        Semaphore permits = new Semaphore(batchParallelism);
+        List<CompletableFuture<Photo>> futures = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            permits.acquireUninterruptibly();
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        validateImage(file);
+                        return ingestPhoto(file, description, user);
+                    } finally {
+                        permits.release();
+                    }
+                }, photoIngestExecutor));
+            } catch (RuntimeException e) {
+                permits.release();
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+        }
+        
+        List<BatchUploadResult> results = new ArrayList<>(files.size());
+        List<Photo> ingested = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            String originalFilename = files.get(i).getOriginalFilename();
+            try {
+                Photo photo = futures.get(i).join();
+                ingested.add(photo);
+                results.add(new BatchUploadResult(originalFilename, true, null, null));
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Error uploading file in batch: {}", originalFilename, cause);
+                results.add(new BatchUploadResult(originalFilename, false, null, cause.getMessage()));
+            }
+        }
+        
+        if (!ingested.isEmpty()) {
+            List<Photo> saved;
+            try {
+                saved = photoRepository.insert(ingested);
+            } catch (RuntimeException e) {
+                // Nothing references the stored blobs, release them again
+                ingested.forEach(this::releaseBlob);
+                throw new RuntimeException("Failed to save uploaded photos: " + e.getMessage(), e);
+            }
+            photoTileService.addAll(saved);
+            photoVersionService.bump(user.getId());
+            Iterator<Photo> savedPhotos = saved.iterator();
+            for (BatchUploadResult result : results) {
+                if (result.isSuccess()) {
+                    result.setPhoto(convertToDTO(savedPhotos.next()));
+                }
+            }
+        }
+        
+        int accepted = ingested.size();
+        log.info("Batch upload for user {}: {} accepted, {} failed", user.getUsername(), accepted, files.size() - accepted);
+        return new BatchUploadResponse(accepted, files.size() - accepted, results);
+    }
+    
+    /**
+     * Reject empty and non-image files
+     */
+    private void validateImage(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new RuntimeException("File is empty");
+        }
+        String contentType = file.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) {
+            throw new RuntimeException("Only image files are accepted");
+        }
+        if (file.getSize() > maxFileSize.toBytes()) {
+            throw new RuntimeException("File exceeds maximum size of " + maxFileSize.toMegabytes() + "MB");
+        }
+    }
+    
+    /**
+     * Store file in GridFS and build its (unsaved) Photo document
+     * Metadata is parsed from the prefix captured while the file streams into GridFS.
+     */
+    private Photo ingestPhoto(MultipartFile file, String description, User user) {
         // Validate file
         if (file.isEmpty()) {
             throw new RuntimeException("File is empty");
         }
+        if (file.getSize() > maxFileSize.toBytes()) {
+            throw new RuntimeException("File exceeds maximum size of " + maxFileSize.toMegabytes() + "MB");
+        }
         
         String originalFilename = file.getOriginalFilename();
         log.info("Starting upload process for file: {}", originalFilename);
         
         try {
+            // Hash the locally spooled part before anything is written to MongoDB,
+            // so a re-uploaded file is neither stored nor parsed again
+            String contentHash;
+            try (InputStream hashStream = file.getInputStream()) {
+                contentHash = computeContentHash(hashStream);
+            }
+            Photo duplicate = linkDuplicate(contentHash, originalFilename, description, user);
+            if (duplicate != null) {
+                return duplicate;
+            }
+            
             // Generate unique filename to avoid conflicts
             String fileExtension = getFileExtension(originalFilename);
             String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
             
             // Store file in GridFS
-            // We need to read input stream twice: once for GPS, once for GridFS.
-            // Since we can't always reset MultipartFile stream reliably if it's not disk-backed, 
-            // and we want to avoid memory issues with large files, we can:
-            // 1. Store in GridFS first.
-            // 2. Read from GridFS to extract GPS.
-            
-            org.bson.types.ObjectId gridFsFileId = gridFsTemplate.store(
-                    file.getInputStream(), 
-                    uniqueFilename, 
-                    file.getContentType(),
-                    new com.mongodb.BasicDBObject("userId", user.getId())
-            );
+            // The upload is streamed once: GridFS consumes it while the first
+            // bytes are captured, so metadata can be parsed from the header
+            // without reading the stored file back from MongoDB.
+            PrefixCapturingInputStream uploadStream =
+                    new PrefixCapturingInputStream(file.getInputStream(), metadataPrefixBytes);
             
-            log.info("File saved to GridFS with ID: {}", gridFsFileId);
-            
-            // Create Photo document
-            Photo photo = new Photo();
-            photo.setFileName(originalFilename);
-            // URL format: /api/photos/image/{uniqueFilename}
-            photo.setUrl("/api/photos/image/" + uniqueFilename);
-            photo.setDescription(description);
-            photo.setUserId(user.getId());
-            
-            // Extract GPS coordinates from GridFS stream
-            try (java.io.InputStream gridFsStream = gridFsTemplate.getResource(uniqueFilename).getInputStream()) {
-                GeoLocation geoLocation = GpsExtractor.extractGpsCoordinates(gridFsStream, originalFilename);
-                
-                if (geoLocation != null) {
-                    photo.setLatitude(geoLocation.getLatitude());
-                    photo.setLongitude(geoLocation.getLongitude());
-                    log.info("GPS coordinates extracted - Lat: {}, Lon: {}", 
-                            geoLocation.getLatitude(), geoLocation.getLongitude());
-                } else {
-                    log.warn("No GPS coordinates found in image: {}", originalFilename);
-                }
-                
-                // Re-open stream for date extraction (since previous read consumed it)
-                try (java.io.InputStream dateStream = gridFsTemplate.getResource(uniqueFilename).getInputStream()) {
-                     LocalDateTime dateTaken = GpsExtractor.extractDateTaken(dateStream, originalFilename);
-                     photo.setTakenAt(dateTaken);
-                }
-                
-            } catch (ImageProcessingException | IOException e) {
-                log.error("Error extracting metadata from image: {}", originalFilename, e);
-                // Continue saving photo without GPS data
+            org.bson.types.ObjectId gridFsFileId;
+            try (uploadStream) {
+                gridFsFileId = gridFsTemplate.store(
+                        uploadStream, 
+                        uniqueFilename, 
+                        file.getContentType(),
+                        new com.mongodb.BasicDBObject("userId", user.getId())
+                                .append("contentHash", contentHash)
+                );
             }
             
-            // TODO: Generate thumbnail for map markers
-            // For now, use the same URL as the full image
-            photo.setThumbnailUrl(photo.getUrl());
-            
-            // Save to database
-            Photo savedPhoto = photoRepository.save(photo);
-            log.info("Photo saved to database with ID: {}", savedPhoto.getId());
+            log.info("File saved to GridFS with ID: {}", gridFsFileId);
             
-            return convertToDTO(savedPhoto);
+            Photo photo = buildPhoto(uniqueFilename, originalFilename, description, user,
+                    uploadStream.getPrefix(), uploadStream.isTruncated());
+            return registerBlob(photo, contentHash, uniqueFilename, uploadStream.getTotalRead(), user);
             
         } catch (IOException e) {
              log.error("Error uploading file: {}", originalFilename, e);
@@ -180,10 +285,335 @@ public class PhotoService {
     }
     
     /**
-     * Get file resource from GridFS
+     * Create and save the Photo for a file that is already stored in GridFS
+     * Used when finalizing resumable uploads; only the first
+     * app.upload.metadata-prefix-bytes of the file are read back for metadata.
+     */
+    public PhotoDTO createPhotoFromStoredFile(String uniqueFilename, String originalFilename,
+                                              String description, User user, long length, String contentHash) {
+        Photo duplicate = linkDuplicate(contentHash, originalFilename, description, user);
+        if (duplicate != null) {
+            // The upload is only dropped once the photo is saved, so a failed finalize can be retried
+            Photo savedPhoto = saveReferencing(duplicate, uniqueFilename);
+            deleteStoredFiles(uniqueFilename);
+            photoTileService.add(savedPhoto);
+            photoVersionService.bump(savedPhoto.getUserId());
+            log.info("Photo saved to database with ID: {}", savedPhoto.getId());
+            return convertToDTO(savedPhoto);
+        }
+        
+        byte[] header;
+        try (InputStream inputStream = gridFsTemplate.getResource(uniqueFilename).getInputStream()) {
+            header = inputStream.readNBytes(metadataPrefixBytes);
+        } catch (IOException e) {
+            log.error("Error reading stored file: {}", uniqueFilename, e);
+            throw new RuntimeException("Failed to read stored file: " + e.getMessage(), e);
+        }
+        
+        Photo photo = buildPhoto(uniqueFilename, originalFilename, description, user,
+                header, length > header.length);
+        Photo savedPhoto = saveReferencing(registerBlob(photo, contentHash, uniqueFilename, length, user),
+                uniqueFilename);
+        photoTileService.add(savedPhoto);
+        photoVersionService.bump(savedPhoto.getUserId());
+        log.info("Photo saved to database with ID: {}", savedPhoto.getId());
+        return convertToDTO(savedPhoto);
+    }
+    
+    /**
+     * Build the (unsaved) Photo document for a file stored in GridFS
+     * 
+     * @param header First bytes of the file
+     * @param headerTruncated True when the file is longer than the header
+     */
+    private Photo buildPhoto(String uniqueFilename, String originalFilename, String description, User user,
+                             byte[] header, boolean headerTruncated) {
+        // Create Photo document
+        Photo photo = new Photo();
+        photo.setFileName(originalFilename);
+        // URL format: /api/photos/image/{uniqueFilename}
+        photo.setUrl("/api/photos/image/" + uniqueFilename);
+        photo.setDescription(description);
+        photo.setUserId(user.getId());
+        
+        // Parse the header captured during upload. When it did not fit into
+        // the prefix, the full read is left to the background processing queue
+        // so the request thread never reads the blob back from GridFS.
+        PhotoMetadata metadata = GpsExtractor.readHeader(header, headerTruncated, originalFilename);
+        if (metadata != null) {
+            applyMetadata(photo, metadata);
+        }
+        
+        photo.setProcessingStatus(Photo.ProcessingStatus.PENDING);
+        
+        // Thumbnails are generated by the processing queue,
+        // until then markers fall back to the full image
+        photo.setThumbnailUrl(photo.getUrl());
+        
+        return photo;
+    }
+    
+    /**
+     * Read metadata from the whole stored original and apply it to the photo
+     * Used by the processing queue when the upload prefix was not enough.
+     */
+    public PhotoMetadata extractMetadataFromStorage(Photo photo) throws ImageProcessingException, IOException {
+        try (InputStream inputStream = openOriginal(photo)) {
+            PhotoMetadata metadata = GpsExtractor.readFull(inputStream, photo.getFileName());
+            applyMetadata(photo, metadata);
+            return metadata;
+        }
+    }
+    
+    /**
+     * Re-read metadata of a stored photo, header first
+     * Used by the metadata backfill, falls back to a full read like uploads do.
+     */
+    public PhotoMetadata readStoredMetadata(Photo photo) throws ImageProcessingException, IOException {
+        return GpsExtractor.read(() -> openOriginal(photo), metadataPrefixBytes, photo.getFileName());
+    }
+    
+    /**
+     * Build the update that writes extracted metadata back to a photo
+     * Only fills what was found, never clears or replaces a location set by hand.
+     */
+    public static Update metadataUpdate(Photo photo, PhotoMetadata metadata) {
+        Update update = new Update();
+        if (metadata.hasLocation() && !Boolean.TRUE.equals(photo.getLocationEdited())) {
+            update.set("latitude", metadata.getLatitude());
+            update.set("longitude", metadata.getLongitude());
+            update.set("location", Photo.toLocation(metadata.getLatitude(), metadata.getLongitude()));
+            update.set("geohash", Photo.toGeohash(metadata.getLatitude(), metadata.getLongitude()));
+        }
+        setIfPresent(update, "takenAt", metadata.getTakenAt());
+        setIfPresent(update, "timeZoneOffset", metadata.getTimeZoneOffset());
+        setIfPresent(update, "altitude", metadata.getAltitude());
+        setIfPresent(update, "heading", metadata.getHeading());
+        setIfPresent(update, "gpsTimestamp", metadata.getGpsTimestamp());
+        setIfPresent(update, "cameraMake", metadata.getCameraMake());
+        setIfPresent(update, "cameraModel", metadata.getCameraModel());
+        setIfPresent(update, "width", metadata.getWidth());
+        setIfPresent(update, "height", metadata.getHeight());
+        setIfPresent(update, "orientation", metadata.getOrientation());
+        return update.set("metadataExtracted", true);
+    }
+    
+    private static void setIfPresent(Update update, String key, Object value) {
+        if (value != null) {
+            update.set(key, value);
+        }
+    }
+    
+    /**
+     * Fill the photo from a single parsed metadata record
+     */
+    private void applyMetadata(Photo photo, PhotoMetadata metadata) {
+        if (metadata.hasLocation()) {
+            photo.setLatitude(metadata.getLatitude());
+            photo.setLongitude(metadata.getLongitude());
+            log.info("GPS coordinates extracted - Lat: {}, Lon: {}", 
+                    metadata.getLatitude(), metadata.getLongitude());
+        }
+        photo.setTakenAt(metadata.getTakenAt());
+        photo.setTimeZoneOffset(metadata.getTimeZoneOffset());
+        photo.setAltitude(metadata.getAltitude());
+        photo.setHeading(metadata.getHeading());
+        photo.setGpsTimestamp(metadata.getGpsTimestamp());
+        photo.setCameraMake(metadata.getCameraMake());
+        photo.setCameraModel(metadata.getCameraModel());
+        photo.setWidth(metadata.getWidth());
+        photo.setHeight(metadata.getHeight());
+        photo.setOrientation(metadata.getOrientation());
+        photo.setMetadataExtracted(true);
+    }
+    
+    /**
+     * Open the original file of a photo, from GridFS or the legacy upload dir
+     */
+    public InputStream openOriginal(Photo photo) throws IOException {
+        String url = photo.getUrl();
+        if (url != null && url.startsWith("/api/photos/image/")) {
+            String filename = url.substring("/api/photos/image/".length());
+            return gridFsTemplate.getResource(filename).getInputStream();
+        } else if (url != null && url.startsWith("/uploads/")) {
+            return Files.newInputStream(Paths.get(uploadDir).resolve(url.substring("/uploads/".length())));
+        }
+        throw new IOException("Unsupported photo url: " + url);
+    }
+    
+    /**
+     * Get processing status of a photo
+     */
+    public ProcessingStatusResponse getProcessingStatus(@NonNull String id) {
+        Photo photo = photoRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Photo not found with id: " + id));
+        Photo.ProcessingStatus status = photo.getProcessingStatus() != null
+                ? photo.getProcessingStatus()
+                : Photo.ProcessingStatus.DONE;
+        return new ProcessingStatusResponse(photo.getId(), status,
+                photo.getProcessingAttempts(), photo.getProcessingError());
+    }
+    
+    /**
+     * SHA-256 of a stream, hex encoded
+     */
+    public static String computeContentHash(InputStream inputStream) throws IOException {
+        MessageDigest digest = newContentDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    /**
+     * Digest used for content hashes
+     */
+    public static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /**
+     * Build a Photo for content the user already uploaded
+     * Takes a reference on the existing blob and copies the metadata and
+     * thumbnails already extracted for it.
+     * @return the (unsaved) Photo, or null if the content is new
      */
-    public org.springframework.core.io.Resource getPhotoResource(String filename) {
-        return gridFsTemplate.getResource(filename);
+    private Photo linkDuplicate(String contentHash, String originalFilename, String description, User user) {
+        PhotoBlob blob = mongoTemplate.findAndModify(blobQuery(user.getId(), contentHash),
+                new Update().inc("refCount", 1), FindAndModifyOptions.options().returnNew(true), PhotoBlob.class);
+        if (blob == null) {
+            return null;
+        }
+        
+        Photo photo = new Photo();
+        photo.setFileName(originalFilename);
+        photo.setUrl("/api/photos/image/" + blob.getFilename());
+        photo.setDescription(description);
+        photo.setUserId(user.getId());
+        photo.setContentHash(contentHash);
+        photo.setThumbnailUrl(photo.getUrl());
+        photo.setProcessingStatus(Photo.ProcessingStatus.PENDING);
+        
+        photoRepository.findFirstByUserIdAndContentHash(user.getId(), contentHash).ifPresent(source -> {
+            photo.setLatitude(source.getLatitude());
+            photo.setLongitude(source.getLongitude());
+            photo.setTakenAt(source.getTakenAt());
+            photo.setTimeZoneOffset(source.getTimeZoneOffset());
+            photo.setAltitude(source.getAltitude());
+            photo.setHeading(source.getHeading());
+            photo.setGpsTimestamp(source.getGpsTimestamp());
+            photo.setCameraMake(source.getCameraMake());
+            photo.setCameraModel(source.getCameraModel());
+            photo.setWidth(source.getWidth());
+            photo.setHeight(source.getHeight());
+            photo.setOrientation(source.getOrientation());
+            photo.setMetadataExtracted(source.getMetadataExtracted());
+            if (source.getProcessingStatus() == null || source.getProcessingStatus() == Photo.ProcessingStatus.DONE) {
+                photo.setThumbnailUrl(source.getThumbnailUrl());
+                photo.setProcessingStatus(Photo.ProcessingStatus.DONE);
+            }
+        });
+        
+        log.info("File {} duplicates stored blob {}, linked instead of storing", originalFilename, blob.getFilename());
+        return photo;
+    }
+    
+    /**
+     * Record a newly stored file as blob with one reference
+     * If the same content was registered concurrently, the new file is
+     * deleted and the photo is linked to the existing blob instead.
+     */
+    private Photo registerBlob(Photo photo, String contentHash, String uniqueFilename, long length, User user) {
+        photo.setContentHash(contentHash);
+        PhotoBlob blob = new PhotoBlob();
+        blob.setUserId(user.getId());
+        blob.setContentHash(contentHash);
+        blob.setFilename(uniqueFilename);
+        blob.setLength(length);
+        blob.setRefCount(1);
+        try {
+            mongoTemplate.insert(blob);
+            return photo;
+        } catch (DuplicateKeyException e) {
+            deleteStoredFiles(uniqueFilename);
+            Photo duplicate = linkDuplicate(contentHash, photo.getFileName(), photo.getDescription(), user);
+            if (duplicate == null) {
+                throw new RuntimeException("Failed to register uploaded file, please retry", e);
+            }
+            return duplicate;
+        }
+    }
+    
+    /**
+     * Save a photo that already holds a blob reference, giving the
+     * reference back when the save fails
+     * @param keepFilename stored file to keep even if its blob is released, or null
+     */
+    private Photo saveReferencing(Photo photo, String keepFilename) {
+        try {
+            return photoRepository.save(photo);
+        } catch (RuntimeException e) {
+            releaseBlob(photo, keepFilename);
+            throw e;
+        }
+    }
+    
+    private void releaseBlob(Photo photo) {
+        releaseBlob(photo, null);
+    }
+    
+    /**
+     * Drop one reference to the blob of a photo
+     * The GridFS original and its derivatives are deleted with the last
+     * reference, unless it is {@code keepFilename}.
+     */
+    private void releaseBlob(Photo photo, String keepFilename) {
+        Query query = blobQuery(photo.getUserId(), photo.getContentHash());
+        PhotoBlob blob = mongoTemplate.findAndModify(query, new Update().inc("refCount", -1),
+                FindAndModifyOptions.options().returnNew(true), PhotoBlob.class);
+        if (blob == null || blob.getRefCount() > 0) {
+            return;
+        }
+        // Only delete if no upload linked to the blob in the meantime
+        Query unreferenced = new Query(Criteria.where("_id").is(blob.getId()).and("refCount").lte(0));
+        if (mongoTemplate.remove(unreferenced, PhotoBlob.class).getDeletedCount() > 0
+                && !blob.getFilename().equals(keepFilename)) {
+            deleteStoredFiles(blob.getFilename());
+        }
+    }
+    
+    private Query blobQuery(String userId, String contentHash) {
+        return new Query(Criteria.where("userId").is(userId).and("contentHash").is(contentHash));
+    }
+    
+    /**
+     * Delete a GridFS original and all of its derivatives
+     */
+    private void deleteStoredFiles(String filename) {
+        List<String> fileIds = new ArrayList<>();
+        gridFsTemplate.find(new Query(Criteria.where("filename").is(filename)))
+                .forEach(file -> fileIds.add(file.getObjectId().toHexString()));
+        gridFsTemplate.delete(new Query(Criteria.where("filename").is(filename)));
+        thumbnailService.deleteThumbnails(filename);
+        blobDiskCache.evict(fileIds);
+        log.info("Deleted file from GridFS: {}", filename);
+    }
+    
+    /**
+     * Get file resource from GridFS, null if no such file
+     */
+    public GridFsFileResource getPhotoResource(String filename) {
+        GridFSFile file = gridFsTemplate.findOne(new Query(Criteria.where("filename").is(filename)));
+        if (file == null) {
+            return null;
+        }
+        return new GridFsFileResource(GridFSBuckets.create(mongoTemplate.getDb(), bucket), file);
     }
 
     /**
@@ -209,15 +639,16 @@ public class PhotoService {
         
         // Delete from GridFS
         String url = photo.getUrl();
-        if (url != null && url.startsWith("/api/photos/image/")) {
-            String filename = url.substring("/api/photos/image/".length());
-            gridFsTemplate.delete(new org.springframework.data.mongodb.core.query.Query(
-                    org.springframework.data.mongodb.core.query.Criteria.where("filename").is(filename)));
-            log.info("Deleted file from GridFS: {}", filename);
+        if (photo.getContentHash() != null) {
+            // Shared blob, only deleted with its last photo
+            releaseBlob(photo);
+        } else if (url != null && url.startsWith("/api/photos/image/")) {
+            deleteStoredFiles(url.substring("/api/photos/image/".length()));
         } else if (url != null && url.startsWith("/uploads/")) {
              // Legacy deletion for local files (best effort)
              try {
                 String filename = url.substring("/uploads/".length());
+                thumbnailService.deleteThumbnails(filename);
                 Path filePath = Paths.get(uploadDir).resolve(filename);
                 if (Files.exists(filePath)) {
                     Files.delete(filePath);
@@ -228,8 +659,12 @@ public class PhotoService {
              }
         }
         
+        spriteService.deleteSprites(id);
+        
         // Delete from database
         photoRepository.deleteById(id);
+        photoTileService.remove(photo.getUserId(), id, photo.getLatitude(), photo.getLongitude());
+        photoVersionService.bump(photo.getUserId());
         log.info("Deleted photo from database with id: {}", id);
     }
     
@@ -241,10 +676,15 @@ public class PhotoService {
         Photo photo = photoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Photo not found with id: " + id));
         
+        Double oldLatitude = photo.getLatitude();
+        Double oldLongitude = photo.getLongitude();
         photo.setLatitude(latitude);
         photo.setLongitude(longitude);
+        photo.setLocationEdited(true);
         
         Photo updatedPhoto = photoRepository.save(photo);
+        photoTileService.move(updatedPhoto, oldLatitude, oldLongitude);
+        photoVersionService.bump(updatedPhoto.getUserId());
         log.info("Updated location for photo {}: ({}, {})", id, latitude, longitude);
         
         return convertToDTO(updatedPhoto);
@@ -253,7 +693,7 @@ public class PhotoService {
     /**
      * Convert Photo entity to PhotoDTO
      */
-    private PhotoDTO convertToDTO(Photo photo) {
+    public PhotoDTO convertToDTO(Photo photo) {
         PhotoDTO dto = new PhotoDTO();
         dto.setId(photo.getId());
         dto.setFileName(photo.getFileName());
@@ -262,8 +702,18 @@ public class PhotoService {
         dto.setLatitude(photo.getLatitude());
         dto.setLongitude(photo.getLongitude());
         dto.setTakenAt(photo.getTakenAt());
+        dto.setTimeZoneOffset(photo.getTimeZoneOffset());
+        dto.setAltitude(photo.getAltitude());
+        dto.setHeading(photo.getHeading());
+        dto.setGpsTimestamp(photo.getGpsTimestamp());
+        dto.setCameraMake(photo.getCameraMake());
+        dto.setCameraModel(photo.getCameraModel());
+        dto.setWidth(photo.getWidth());
+        dto.setHeight(photo.getHeight());
+        dto.setOrientation(photo.getOrientation());
         dto.setDescription(photo.getDescription());
         dto.setUploadedAt(photo.getUploadedAt());
+        dto.setProcessingStatus(photo.getProcessingStatus());
         return dto;
     }
 }
@@ -0,0 +1,368 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Photo;
+import com.geophoto.entity.PhotoTile;
+import com.geophoto.util.BoundingBox;
+import com.geophoto.util.Geohash;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.RenameCollectionOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Photo Tile Service
+ * Maintains the photo_tiles aggregates: one document per user and geohash
+ * prefix of precision 1 to {@link #MAX_PRECISION}, updated with atomic $inc
+ * upserts whenever a photo gains, moves or loses its location, so map
+ * aggregates are read per tile instead of per photo. Cells changed while
+ * a rebuild runs are recomputed from the photos once its tiles are
+ * swapped in, so no update is lost to the rename.
+ */
+@Service
+@Slf4j
+public class PhotoTileService {
+
+    public static final int MAX_PRECISION = 7;
+
+    private static final String REBUILD_COLLECTION = "photo_tiles_rebuild";
+    private static final int GEOHASH_BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final ThreadPoolTaskExecutor executor;
+
+    private volatile boolean ready;
+
+    // Tile ids updated while a rebuild runs, null otherwise; guarded by this lock
+    private final Object changedLock = new Object();
+    private Set<String> changedDuringRebuild;
+
+    public PhotoTileService(MongoTemplate mongoTemplate,
+                            @Qualifier("photoTileExecutor") ThreadPoolTaskExecutor executor) {
+        this.mongoTemplate = mongoTemplate;
+        this.executor = executor;
+    }
+
+    /**
+     * Build the tiles on first start, later starts reuse the maintained ones
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (mongoTemplate.estimatedCount(PhotoTile.class) > 0) {
+            ready = true;
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.error("Initial photo tile build failed", e);
+            }
+        });
+    }
+
+    /**
+     * True once the tiles reflect all photos, readers fall back to photos until then
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Count photos that gained a location
+     */
+    public void add(Photo photo) {
+        addAll(List.of(photo));
+    }
+
+    public void addAll(Collection<Photo> photos) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PhotoTile.class);
+        List<String> ids = new ArrayList<>();
+        for (Photo photo : photos) {
+            String geohash = Photo.toGeohash(photo.getLatitude(), photo.getLongitude());
+            if (photo.getUserId() == null || geohash == null) {
+                continue;
+            }
+            for (int precision = 1; precision <= MAX_PRECISION; precision++) {
+                String cell = geohash.substring(0, precision);
+                Update update = new Update()
+                        .setOnInsert("userId", photo.getUserId())
+                        .setOnInsert("geohash", cell)
+                        .setOnInsert("precision", precision)
+                        .inc("count", 1)
+                        .inc("sumLat", photo.getLatitude())
+                        .inc("sumLon", photo.getLongitude())
+                        .min("minLat", photo.getLatitude())
+                        .min("minLon", photo.getLongitude())
+                        .max("maxLat", photo.getLatitude())
+                        .max("maxLon", photo.getLongitude())
+                        .max("newestPhotoId", photo.getId());
+                String id = tileId(photo.getUserId(), cell);
+                ids.add(id);
+                bulk.upsert(byId(id), update);
+            }
+        }
+        if (!ids.isEmpty()) {
+            markChanged(ids);
+            bulk.execute();
+            markChanged(ids);
+        }
+    }
+
+    /**
+     * Uncount a photo that lost its location or was deleted
+     * @param latitude latitude the photo was counted with
+     * @param longitude longitude the photo was counted with
+     */
+    public void remove(String userId, String photoId, Double latitude, Double longitude) {
+        String geohash = Photo.toGeohash(latitude, longitude);
+        if (userId == null || geohash == null) {
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(MAX_PRECISION);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PhotoTile.class);
+        for (int precision = 1; precision <= MAX_PRECISION; precision++) {
+            String id = tileId(userId, geohash.substring(0, precision));
+            ids.add(id);
+            bulk.updateOne(byId(id), new Update()
+                    .inc("count", -1)
+                    .inc("sumLat", -latitude)
+                    .inc("sumLon", -longitude));
+        }
+        markChanged(ids);
+        bulk.execute();
+
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(ids).and("count").lte(0)), PhotoTile.class);
+
+        // $max cannot be undone, look up the next newest photo of cells that pointed at this one
+        Query pointing = new Query(Criteria.where("_id").in(ids).and("newestPhotoId").is(photoId));
+        for (PhotoTile tile : mongoTemplate.find(pointing, PhotoTile.class)) {
+            Photo newest = findNewest(userId, tile.getGeohash());
+            Update update = newest == null ? new Update().unset("newestPhotoId") : new Update().set("newestPhotoId", newest.getId());
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(tile.getId()).and("newestPhotoId").is(photoId)),
+                    update, PhotoTile.class);
+        }
+        markChanged(ids);
+    }
+
+    /**
+     * Move a photo between cells after its location changed
+     */
+    public void move(Photo photo, Double oldLatitude, Double oldLongitude) {
+        if (Objects.equals(oldLatitude, photo.getLatitude()) && Objects.equals(oldLongitude, photo.getLongitude())) {
+            return;
+        }
+        remove(photo.getUserId(), photo.getId(), oldLatitude, oldLongitude);
+        add(photo);
+    }
+
+    /**
+     * Tiles of a user at one precision covering the box
+     */
+    public List<PhotoTile> findTiles(String userId, BoundingBox box, int precision) {
+        List<String> ids = Geohash.covering(box, precision).stream()
+                .map(cell -> tileId(userId, cell))
+                .toList();
+        return mongoTemplate.find(new Query(Criteria.where("_id").in(ids)), PhotoTile.class);
+    }
+
+    /**
+     * Recompute every tile from the photos collection
+     * Tiles are built into a side collection with one $group per precision
+     * and swapped in with a rename, readers keep the old tiles meanwhile.
+     * Cells changed while it runs are recomputed after the rename.
+     * @return number of tiles
+     */
+    public synchronized long rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (changedLock) {
+            changedDuringRebuild = new HashSet<>();
+        }
+        try {
+            long count = buildAndSwap();
+            recomputeChanged();
+            ready = true;
+            log.info("Rebuilt {} photo tiles in {} ms", count, System.currentTimeMillis() - start);
+            return count;
+        } finally {
+            synchronized (changedLock) {
+                changedDuringRebuild = null;
+            }
+        }
+    }
+
+    private long buildAndSwap() {
+        backfillGeohashes();
+
+        mongoTemplate.dropCollection(REBUILD_COLLECTION);
+        AggregationOptions options = AggregationOptions.builder().allowDiskUse(true).build();
+        for (int precision = 1; precision <= MAX_PRECISION; precision++) {
+            Document cell = new Document("$substrCP", List.of("$geohash", 0, precision));
+            final int p = precision;
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("userId").type(2).and("geohash").type(2)),
+                    context -> new Document("$group", new Document("_id",
+                            new Document("$concat", List.of("$userId", ":", cell)))
+                            .append("userId", new Document("$first", "$userId"))
+                            .append("geohash", new Document("$first", cell))
+                            .append("precision", new Document("$first", new Document("$literal", p)))
+                            .append("count", new Document("$sum", 1))
+                            .append("sumLat", new Document("$sum", "$latitude"))
+                            .append("sumLon", new Document("$sum", "$longitude"))
+                            .append("minLat", new Document("$min", "$latitude"))
+                            .append("minLon", new Document("$min", "$longitude"))
+                            .append("maxLat", new Document("$max", "$latitude"))
+                            .append("maxLon", new Document("$max", "$longitude"))
+                            .append("newestPhotoId", new Document("$max", new Document("$toString", "$_id")))),
+                    context -> new Document("$merge", new Document("into", REBUILD_COLLECTION)
+                            .append("whenMatched", "replace")
+                            .append("whenNotMatched", "insert")))
+                    .withOptions(options);
+            mongoTemplate.aggregate(aggregation, Photo.class, Document.class);
+        }
+
+        String tiles = mongoTemplate.getCollectionName(PhotoTile.class);
+        long count = 0;
+        if (mongoTemplate.collectionExists(REBUILD_COLLECTION)) {
+            count = mongoTemplate.getCollection(REBUILD_COLLECTION).estimatedDocumentCount();
+            mongoTemplate.getCollection(REBUILD_COLLECTION).renameCollection(
+                    new MongoNamespace(mongoTemplate.getDb().getName(), tiles),
+                    new RenameCollectionOptions().dropTarget(true));
+        } else {
+            mongoTemplate.dropCollection(tiles);
+        }
+        return count;
+    }
+
+    /**
+     * Remember tiles updated during a rebuild, before their update (it may
+     * still hit the tiles about to be replaced) and after it (it may land
+     * after the cell was recomputed)
+     */
+    private void markChanged(Collection<String> ids) {
+        synchronized (changedLock) {
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.addAll(ids);
+            }
+        }
+    }
+
+    /**
+     * Recompute the cells changed during the rebuild until no more come in
+     */
+    private void recomputeChanged() {
+        while (true) {
+            Set<String> changed;
+            synchronized (changedLock) {
+                if (changedDuringRebuild.isEmpty()) {
+                    return;
+                }
+                changed = changedDuringRebuild;
+                changedDuringRebuild = new HashSet<>();
+            }
+            log.info("Recomputing {} photo tiles changed during the rebuild", changed.size());
+            changed.forEach(this::recompute);
+        }
+    }
+
+    /**
+     * Replace one tile with the aggregate of the photos in its cell, or delete it when the cell is empty
+     */
+    private void recompute(String id) {
+        int separator = id.indexOf(':');
+        String userId = id.substring(0, separator);
+        String cell = id.substring(separator + 1);
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("userId").is(userId).and("geohash").regex("^" + cell)),
+                Aggregation.group()
+                        .count().as("count")
+                        .sum("latitude").as("sumLat")
+                        .sum("longitude").as("sumLon")
+                        .min("latitude").as("minLat")
+                        .min("longitude").as("minLon")
+                        .max("latitude").as("maxLat")
+                        .max("longitude").as("maxLon")
+                        .max("_id").as("newestPhotoId"));
+        Document totals = mongoTemplate.aggregate(aggregation, Photo.class, Document.class).getUniqueMappedResult();
+        if (totals == null) {
+            mongoTemplate.remove(byId(id), PhotoTile.class);
+            return;
+        }
+        Object newest = totals.get("newestPhotoId");
+        mongoTemplate.save(new PhotoTile(id, userId, cell, cell.length(),
+                ((Number) totals.get("count")).longValue(),
+                ((Number) totals.get("sumLat")).doubleValue(), ((Number) totals.get("sumLon")).doubleValue(),
+                totals.getDouble("minLat"), totals.getDouble("minLon"),
+                totals.getDouble("maxLat"), totals.getDouble("maxLon"),
+                newest instanceof ObjectId objectId ? objectId.toHexString() : String.valueOf(newest)));
+    }
+
+    /**
+     * Newest photo of a cell, from the {userId, geohash, _id} index without reading the photos
+     */
+    private Photo findNewest(String userId, String cell) {
+        Query query = new Query(Criteria.where("userId").is(userId).and("geohash").regex("^" + cell))
+                .with(Sort.by(Sort.Direction.DESC, "_id"))
+                .limit(1);
+        query.fields().include("_id");
+        return mongoTemplate.findOne(query, Photo.class);
+    }
+
+    /**
+     * Fill the geohash of photos located before the field existed
+     */
+    private void backfillGeohashes() {
+        Query query = new Query(Criteria.where("geohash").exists(false)
+                .and("latitude").gte(-90).lte(90)
+                .and("longitude").gte(-180).lte(180));
+        query.fields().include("latitude", "longitude");
+        query.cursorBatchSize(GEOHASH_BATCH_SIZE);
+
+        int pending = 0;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Photo.class);
+        try (Stream<Photo> photos = mongoTemplate.stream(query, Photo.class)) {
+            for (Photo photo : (Iterable<Photo>) photos::iterator) {
+                bulk.updateOne(byId(photo.getId()), new Update()
+                        .set("geohash", Photo.toGeohash(photo.getLatitude(), photo.getLongitude())));
+                if (++pending == GEOHASH_BATCH_SIZE) {
+                    bulk.execute();
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Photo.class);
+                    pending = 0;
+                }
+            }
+        }
+        if (pending > 0) {
+            bulk.execute();
+        }
+    }
+
+    public static String tileId(String userId, String geohash) {
+        return userId + ":" + geohash;
+    }
+
+    private static Query byId(String id) {
+        return new Query(Criteria.where("_id").is(id));
+    }
+}
@@ -0,0 +1,65 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.PhotoVersion;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+
+/**
+ * Photo Version Service
+ * Per-user photo library versions for conditional GETs. Writers bump the
+ * version after their change is stored, so a response is never cached
+ * under a version newer than its data. Bumping also drops the user's
+ * cached spatial index. Changes across all users bump one global
+ * document whose version is added to every user's, so users without a
+ * version document of their own are covered too.
+ */
+@Service
+@RequiredArgsConstructor
+public class PhotoVersionService {
+
+    private static final String GLOBAL_ID = "*";
+
+    private final MongoTemplate mongoTemplate;
+    private final SpatialIndexCache spatialIndexCache;
+
+    /**
+     * Current version of a user's photos plus the global version, one _id lookup
+     */
+    public long getVersion(String userId) {
+        Query query = new Query(Criteria.where("_id").in(userId, GLOBAL_ID));
+        return mongoTemplate.find(query, PhotoVersion.class).stream()
+                .mapToLong(PhotoVersion::getVersion)
+                .sum();
+    }
+
+    /**
+     * Record a change to a user's photos
+     */
+    public void bump(String userId) {
+        if (userId == null) {
+            return;
+        }
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(userId)),
+                new Update().inc("version", 1), PhotoVersion.class);
+        spatialIndexCache.invalidate(userId);
+    }
+
+    public void bumpAll(Collection<String> userIds) {
+        userIds.forEach(this::bump);
+    }
+
+    /**
+     * Record a change across all users
+     */
+    public void bumpAll() {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(GLOBAL_ID)),
+                new Update().inc("version", 1), PhotoVersion.class);
+        spatialIndexCache.invalidateAll();
+    }
+}
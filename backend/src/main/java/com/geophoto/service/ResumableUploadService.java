@@ -0,0 +1,362 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.CreateUploadSessionRequest;
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.UploadSessionResponse;
+import com.geophoto.entity.UploadSession;
+import com.geophoto.entity.User;
+import com.geophoto.repository.UploadSessionRepository;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Updates;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable Upload Service
+ * Create a session, PUT chunks at offsets, query the committed offset, finalize.
+ * Request bodies are cut into GridFS-sized chunks and written directly to the
+ * fs.chunks collection, so each request holds at most one chunk in memory
+ * regardless of the file size. The fs.files document is only written at
+ * finalize, which makes the file visible to GridFsTemplate.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResumableUploadService {
+    
+    private final MongoTemplate mongoTemplate;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final PhotoService photoService;
+    private final GridFsTemplate gridFsTemplate;
+    
+    /**
+     * Running SHA-256 per session, valid up to the recorded offset. Lost on
+     * restart (or when chunks hit another instance), in which case the hash
+     * is computed from the stored chunks at finalize.
+     */
+    private final Map<String, RunningDigest> digests = new ConcurrentHashMap<>();
+    
+    @Value("${spring.data.mongodb.gridfs.bucket:fs}")
+    private String bucket;
+    
+    @Value("${app.upload.resumable.chunk-size:261120}")
+    private int chunkSize;
+    
+    @Value("${app.upload.resumable.max-file-size:256MB}")
+    private DataSize maxFileSize;
+    
+    @Value("${app.upload.resumable.session-ttl-hours:24}")
+    private long sessionTtlHours;
+    
+    /**
+     * Same index the GridFS driver creates, needed before the driver has
+     * written any file itself
+     */
+    @PostConstruct
+    public void ensureChunkIndex() {
+        mongoTemplate.getCollection(bucket + ".chunks")
+                .createIndex(Indexes.ascending("files_id", "n"), new IndexOptions().unique(true));
+    }
+    
+    /**
+     * Start a resumable upload
+     */
+    public UploadSessionResponse createSession(CreateUploadSessionRequest request, User user) {
+        if (!request.getContentType().startsWith("image/")) {
+            throw new RuntimeException("Only image files are accepted");
+        }
+        if (request.getTotalSize() > maxFileSize.toBytes()) {
+            throw new RuntimeException("File exceeds maximum size of " + maxFileSize.toMegabytes() + "MB");
+        }
+        
+        UploadSession session = new UploadSession();
+        session.setUserId(user.getId());
+        session.setFileName(request.getFileName());
+        session.setContentType(request.getContentType());
+        session.setDescription(request.getDescription());
+        session.setTotalSize(request.getTotalSize());
+        session.setChunkSize(chunkSize);
+        session.setGridFsFileId(new ObjectId());
+        session.setStoredFilename(UUID.randomUUID() + getFileExtension(request.getFileName()));
+        session.setExpiresAt(LocalDateTime.now().plusHours(sessionTtlHours));
+        
+        UploadSession saved = uploadSessionRepository.save(session);
+        log.info("Created upload session {} for {} ({} bytes)", saved.getId(), saved.getFileName(), saved.getTotalSize());
+        return toResponse(saved);
+    }
+    
+    /**
+     * Current state of a session
+     */
+    public UploadSessionResponse getSession(String sessionId, User user) {
+        return toResponse(findSession(sessionId, user));
+    }
+    
+    /**
+     * Append the request body at the given offset
+     * Each full chunk is written and committed before the next one is read,
+     * so a dropped connection only loses the chunk in flight.
+     * 
+     * @throws IllegalStateException if offset is not the committed offset
+     */
+    public UploadSessionResponse appendChunk(String sessionId, User user, long offset, InputStream body) throws IOException {
+        UploadSession session = findSession(sessionId, user);
+        if (session.getStatus() != UploadSession.Status.ACTIVE) {
+            throw new IllegalStateException("Upload session is already completed");
+        }
+        if (offset != session.getCommittedOffset()) {
+            throw new IllegalStateException("Expected offset " + session.getCommittedOffset());
+        }
+        
+        int size = session.getChunkSize();
+        byte[] buffer = new byte[size];
+        long committed = offset;
+        
+        RunningDigest digest = digests.get(session.getId());
+        if (digest == null && offset == 0) {
+            digest = new RunningDigest(PhotoService.newContentDigest());
+            digests.put(session.getId(), digest);
+        }
+        if (digest != null && digest.offset != offset) {
+            digests.remove(session.getId());
+            digest = null;
+        }
+        
+        while (committed < session.getTotalSize()) {
+            int filled = body.readNBytes(buffer, 0, size);
+            if (filled == 0) {
+                break;
+            }
+            if (committed + filled > session.getTotalSize()) {
+                throw new RuntimeException("Upload exceeds declared size of " + session.getTotalSize() + " bytes");
+            }
+            boolean last = committed + filled == session.getTotalSize();
+            if (filled < size && !last) {
+                // Partial chunk before the end of the file: drop it, the client
+                // resumes at the committed (chunk-aligned) offset
+                break;
+            }
+            
+            writeChunk(session, (int) (committed / size), buffer, filled);
+            commitOffset(session, committed, committed + filled);
+            committed += filled;
+            if (digest != null) {
+                digest.update(buffer, filled, committed);
+            }
+        }
+        
+        if (committed == session.getTotalSize() && body.read() != -1) {
+            throw new RuntimeException("Upload exceeds declared size of " + session.getTotalSize() + " bytes");
+        }
+        
+        session.setCommittedOffset(committed);
+        return toResponse(session);
+    }
+    
+    /**
+     * Complete the upload: publish the GridFS file and create the Photo
+     * Metadata is extracted here from the head of the stored file.
+     */
+    public PhotoDTO finalizeUpload(String sessionId, User user) {
+        UploadSession session = findSession(sessionId, user);
+        if (session.getStatus() == UploadSession.Status.COMPLETED && session.getPhotoId() != null) {
+            return photoService.getPhotoById(session.getPhotoId());
+        }
+        if (session.getCommittedOffset() != session.getTotalSize()) {
+            throw new IllegalStateException("Upload incomplete: " + session.getCommittedOffset()
+                    + " of " + session.getTotalSize() + " bytes received");
+        }
+        
+        // Claim the session so concurrent finalize calls create only one photo
+        Query active = new Query(Criteria.where("_id").is(session.getId())
+                .and("status").is(UploadSession.Status.ACTIVE));
+        UploadSession claimed = mongoTemplate.findAndModify(active,
+                new Update().set("status", UploadSession.Status.COMPLETED),
+                FindAndModifyOptions.options().returnNew(true), UploadSession.class);
+        if (claimed == null) {
+            throw new IllegalStateException("Upload session is already being completed");
+        }
+        
+        try {
+            Document metadata = new Document("userId", session.getUserId())
+                    .append("_contentType", session.getContentType());
+            Document file = new Document("_id", session.getGridFsFileId())
+                    .append("length", session.getTotalSize())
+                    .append("chunkSize", session.getChunkSize())
+                    .append("uploadDate", new Date())
+                    .append("filename", session.getStoredFilename())
+                    .append("metadata", metadata);
+            try {
+                mongoTemplate.getCollection(bucket + ".files").insertOne(file);
+            } catch (MongoWriteException e) {
+                if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                // Left over from an earlier finalize attempt that failed afterwards
+                log.warn("GridFS file {} already exists", session.getStoredFilename());
+            }
+            
+            String contentHash = contentHash(session);
+            mongoTemplate.getCollection(bucket + ".files").updateOne(
+                    Filters.eq("_id", session.getGridFsFileId()),
+                    Updates.set("metadata.contentHash", contentHash));
+            
+            PhotoDTO photo = photoService.createPhotoFromStoredFile(session.getStoredFilename(),
+                    session.getFileName(), session.getDescription(), user, session.getTotalSize(),
+                    contentHash);
+            
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(session.getId())),
+                    new Update().set("photoId", photo.getId()), UploadSession.class);
+            log.info("Completed upload session {} as photo {}", session.getId(), photo.getId());
+            return photo;
+            
+        } catch (RuntimeException e) {
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(session.getId())),
+                    new Update().set("status", UploadSession.Status.ACTIVE), UploadSession.class);
+            throw e;
+        }
+    }
+    
+    /**
+     * Abort an upload and delete its chunks
+     */
+    public void abortUpload(String sessionId, User user) {
+        UploadSession session = findSession(sessionId, user);
+        if (session.getStatus() == UploadSession.Status.ACTIVE) {
+            deleteChunks(session);
+        }
+        digests.remove(sessionId);
+        uploadSessionRepository.delete(session);
+        log.info("Aborted upload session {}", sessionId);
+    }
+    
+    /**
+     * Remove expired sessions and the chunks of unfinished uploads
+     */
+    @Scheduled(fixedDelayString = "${app.upload.resumable.cleanup-interval-ms:3600000}")
+    public void cleanupExpiredSessions() {
+        for (UploadSession session : uploadSessionRepository.findByExpiresAtBefore(LocalDateTime.now())) {
+            if (session.getStatus() == UploadSession.Status.ACTIVE) {
+                deleteChunks(session);
+            }
+            digests.remove(session.getId());
+            uploadSessionRepository.delete(session);
+            log.info("Removed expired upload session {}", session.getId());
+        }
+    }
+    
+    /**
+     * SHA-256 of the completed upload
+     */
+    private String contentHash(UploadSession session) {
+        // digest() resets the digest, so it can only be used once: a retried
+        // finalize after a failure hashes the stored chunks instead
+        RunningDigest digest = digests.remove(session.getId());
+        if (digest != null && digest.offset == session.getTotalSize()) {
+            return HexFormat.of().formatHex(digest.digest.digest());
+        }
+        log.info("No running hash for upload session {}, hashing stored chunks", session.getId());
+        try (InputStream inputStream = gridFsTemplate.getResource(session.getStoredFilename()).getInputStream()) {
+            return PhotoService.computeContentHash(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to hash uploaded file: " + e.getMessage(), e);
+        }
+    }
+    
+    private void writeChunk(UploadSession session, int n, byte[] buffer, int length) {
+        byte[] data = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        Document chunk = new Document("files_id", session.getGridFsFileId())
+                .append("n", n)
+                .append("data", new Binary(data));
+        // Upsert keeps a retried chunk idempotent
+        mongoTemplate.getCollection(bucket + ".chunks").replaceOne(
+                Filters.and(Filters.eq("files_id", session.getGridFsFileId()), Filters.eq("n", n)),
+                chunk, new ReplaceOptions().upsert(true));
+    }
+    
+    private void commitOffset(UploadSession session, long from, long to) {
+        Query query = new Query(Criteria.where("_id").is(session.getId())
+                .and("status").is(UploadSession.Status.ACTIVE)
+                .and("committedOffset").is(from));
+        Update update = new Update()
+                .set("committedOffset", to)
+                .set("expiresAt", LocalDateTime.now().plusHours(sessionTtlHours));
+        if (mongoTemplate.updateFirst(query, update, UploadSession.class).getModifiedCount() == 0) {
+            throw new IllegalStateException("Upload session was modified concurrently");
+        }
+    }
+    
+    private void deleteChunks(UploadSession session) {
+        mongoTemplate.getCollection(bucket + ".chunks")
+                .deleteMany(Filters.eq("files_id", session.getGridFsFileId()));
+        // Left by a finalize attempt that failed
+        mongoTemplate.getCollection(bucket + ".files")
+                .deleteOne(Filters.eq("_id", session.getGridFsFileId()));
+    }
+    
+    private UploadSession findSession(String sessionId, User user) {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new RuntimeException("Upload session not found with id: " + sessionId));
+        if (!session.getUserId().equals(user.getId())) {
+            throw new RuntimeException("Upload session not found with id: " + sessionId);
+        }
+        return session;
+    }
+    
+    private UploadSessionResponse toResponse(UploadSession session) {
+        return new UploadSessionResponse(session.getId(), session.getTotalSize(), session.getChunkSize(),
+                session.getCommittedOffset(), session.getStatus(), session.getPhotoId());
+    }
+    
+    private String getFileExtension(String filename) {
+        int lastDotIndex = filename.lastIndexOf('.');
+        return lastDotIndex == -1 ? "" : filename.substring(lastDotIndex);
+    }
+    
+    /**
+     * Message digest together with the number of bytes it has consumed
+     */
+    private static class RunningDigest {
+        private final MessageDigest digest;
+        private long offset;
+        
+        RunningDigest(MessageDigest digest) {
+            this.digest = digest;
+        }
+        
+        void update(byte[] buffer, int length, long newOffset) {
+            digest.update(buffer, 0, length);
+            offset = newOffset;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Photo;
+import com.geophoto.util.SingleFlight;
+import com.geophoto.util.SpatialIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Spatial Index Cache
+ * In-process {@link SpatialIndex} per active user, built lazily from one
+ * projected scan on the first map request and kept in LRU order under
+ * app.geo.index-cache.max-bytes. Each index is tagged with the user's
+ * library version from photo_versions, which every instance bumps after a
+ * write, so a request carrying a newer version rebuilds it. Map requests
+ * arriving while an index is built wait for that build instead of
+ * scanning again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SpatialIndexCache {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.geo.index-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    // All guarded by this
+    private final LinkedHashMap<String, Entry> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> oversized = new HashMap<>();
+    private long totalBytes;
+    // Keyed by user and version, so requests after a write never share a stale scan
+    private final SingleFlight<String, SpatialIndex> loads = new SingleFlight<>();
+
+    private record Entry(long version, SpatialIndex index) {
+    }
+
+    /**
+     * Index of a user's located photos, null when the cache is disabled or
+     * the user has too many photos for the budget (callers query Mongo then)
+     * @param version the user's current version from photo_versions
+     */
+    public SpatialIndex get(String userId, long version) {
+        synchronized (this) {
+            if (maxBytes <= 0) {
+                return null;
+            }
+            SpatialIndex index = lookup(userId, version);
+            if (index != null || oversized.getOrDefault(userId, -1L) >= version) {
+                return index;
+            }
+        }
+
+        return loads.execute(userId + ":" + version, () -> build(userId, version));
+    }
+
+    private SpatialIndex build(String userId, long version) {
+        synchronized (this) {
+            // Stored by a build that finished after the caller's lookup
+            SpatialIndex built = lookup(userId, version);
+            if (built != null || oversized.getOrDefault(userId, -1L) >= version) {
+                return built;
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        // A write during the scan bumps the version past this one, the next request rebuilds
+        SpatialIndex index = load(userId);
+        synchronized (this) {
+            if (index == null) {
+                oversized.merge(userId, version, Math::max);
+                log.info("Photos of user {} exceed the spatial index budget", userId);
+                return null;
+            }
+            Entry current = indexes.get(userId);
+            // A request that read an older version may finish last, keep the newest
+            if (current == null || current.version() < version) {
+                indexes.put(userId, new Entry(version, index));
+                if (current != null) {
+                    totalBytes -= current.index().estimatedBytes();
+                }
+                totalBytes += index.estimatedBytes();
+                evict();
+            }
+        }
+        log.debug("Built spatial index of {} photos for user {} in {} ms",
+                index.size(), userId, System.currentTimeMillis() - start);
+        return index;
+    }
+
+    /**
+     * Cached index at least as new as the version, newer data is fine for a request that read an older version
+     */
+    private SpatialIndex lookup(String userId, long version) {
+        Entry entry = indexes.get(userId);
+        return entry != null && entry.version() >= version ? entry.index() : null;
+    }
+
+    /**
+     * Drop a user's index after their photos changed on this instance, to free it early
+     */
+    public synchronized void invalidate(String userId) {
+        if (userId == null) {
+            return;
+        }
+        oversized.remove(userId);
+        Entry removed = indexes.remove(userId);
+        if (removed != null) {
+            totalBytes -= removed.index().estimatedBytes();
+        }
+    }
+
+    /**
+     * Drop every index, for bulk changes across users
+     */
+    public synchronized void invalidateAll() {
+        indexes.clear();
+        oversized.clear();
+        totalBytes = 0;
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = indexes.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().index().estimatedBytes();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Read id, coordinates, capture time and thumbnail of every located photo
+     * @return null once the photos would not fit in the budget
+     */
+    private SpatialIndex load(String userId) {
+        Query query = new Query(Criteria.where("userId").is(userId).and("location").exists(true))
+                .cursorBatchSize(LOAD_BATCH_SIZE);
+        query.fields().include("latitude", "longitude", "takenAt", "thumbnailUrl");
+
+        int capacity = 256;
+        double[] latitudes = new double[capacity];
+        double[] longitudes = new double[capacity];
+        long[] takenAt = new long[capacity];
+        int[] ids = new int[capacity * 3];
+        String[] thumbnailUrls = new String[capacity];
+        int count = 0;
+        long bytes = 0;
+
+        String collection = mongoTemplate.getCollectionName(Photo.class);
+        try (Stream<Document> photos = mongoTemplate.stream(query, Document.class, collection)) {
+            for (Document photo : (Iterable<Document>) photos::iterator) {
+                Number latitude = photo.get("latitude", Number.class);
+                Number longitude = photo.get("longitude", Number.class);
+                if (latitude == null || longitude == null) {
+                    continue;
+                }
+                if (count == capacity) {
+                    capacity *= 2;
+                    latitudes = Arrays.copyOf(latitudes, capacity);
+                    longitudes = Arrays.copyOf(longitudes, capacity);
+                    takenAt = Arrays.copyOf(takenAt, capacity);
+                    ids = Arrays.copyOf(ids, capacity * 3);
+                    thumbnailUrls = Arrays.copyOf(thumbnailUrls, capacity);
+                }
+                Date taken = photo.getDate("takenAt");
+                String thumbnailUrl = photo.getString("thumbnailUrl");
+
+                latitudes[count] = latitude.doubleValue();
+                longitudes[count] = longitude.doubleValue();
+                takenAt[count] = taken == null ? Long.MIN_VALUE : taken.getTime();
+                SpatialIndex.putId(ids, count, photo.getObjectId("_id"));
+                thumbnailUrls[count] = thumbnailUrl;
+                count++;
+
+                bytes += 36 + SpatialIndex.estimatedBytes(thumbnailUrl);
+                if (bytes > maxBytes) {
+                    return null;
+                }
+            }
+        }
+        return new SpatialIndex(count, latitudes, longitudes, takenAt, ids, thumbnailUrls);
+    }
+}
@@ -0,0 +1,358 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.SpriteOffsetDTO;
+import com.geophoto.dto.SpriteRequest;
+import com.geophoto.dto.SpriteResponse;
+import com.geophoto.entity.Photo;
+import com.geophoto.entity.User;
+import com.geophoto.util.GridFsFileResource;
+import com.geophoto.util.ImageScaler;
+import com.geophoto.util.SingleFlight;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sprite Service
+ * Packs the thumbnails of many photos into one JPEG sprite sheet, so a map
+ * viewport loads one image instead of one request per marker. The sheet is
+ * stored in GridFS under a name hashed from the user, size and thumbnail
+ * file ids, and served by the image endpoint like any other file; the
+ * offsets live in its metadata. The same photo set therefore maps to the
+ * same sheet until a thumbnail is regenerated, and deleting a photo drops
+ * the sheets that contain it. Sheets expire after app.sprites.ttl and are
+ * rebuilt on the next request. Builds are capped at
+ * app.sprites.max-concurrent-builds, each holding its sheet bitmap and a
+ * few decoded thumbnails, so a burst of viewports cannot exhaust the heap.
+ */
+@Service
+@Slf4j
+public class SpriteService {
+
+    private static final String IMAGE_URL_PREFIX = "/api/photos/image/";
+    private static final String SPRITE_PREFIX = "sprite-";
+    private static final float SPRITE_QUALITY = 0.8f;
+
+    private final MongoTemplate mongoTemplate;
+    private final GridFsTemplate gridFsTemplate;
+    private final BlobDiskCache blobDiskCache;
+    private final ThreadPoolTaskExecutor executor;
+    private final SingleFlight<String, SpriteResponse> builds = new SingleFlight<>();
+    private final Semaphore buildPermits;
+
+    @Value("${app.sprites.max-photos:500}")
+    private int maxPhotos;
+
+    @Value("${app.sprites.read-parallelism:8}")
+    private int readParallelism;
+
+    @Value("${app.sprites.build-wait-ms:2000}")
+    private long buildWaitMs;
+
+    @Value("${app.sprites.ttl:7d}")
+    private Duration ttl;
+
+    @Value("${spring.data.mongodb.gridfs.bucket:fs}")
+    private String bucket;
+
+    public SpriteService(MongoTemplate mongoTemplate, GridFsTemplate gridFsTemplate, BlobDiskCache blobDiskCache,
+                         @Qualifier("spriteReadExecutor") ThreadPoolTaskExecutor executor,
+                         @Value("${app.sprites.max-concurrent-builds:2}") int maxConcurrentBuilds) {
+        this.mongoTemplate = mongoTemplate;
+        this.gridFsTemplate = gridFsTemplate;
+        this.blobDiskCache = blobDiskCache;
+        this.executor = executor;
+        this.buildPermits = new Semaphore(maxConcurrentBuilds);
+    }
+
+    /**
+     * Indexes finding the sheets that contain a photo and expired sheets, only sheets are indexed
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        MongoCollection<Document> files = mongoTemplate.getCollection(bucket + ".files");
+        files.createIndex(Indexes.ascending("metadata.photoIds"),
+                new IndexOptions().name("sprite_photo_ids")
+                        .partialFilterExpression(Filters.eq("metadata.sprite", true)));
+        files.createIndex(Indexes.ascending("uploadDate"),
+                new IndexOptions().name("sprite_upload_date")
+                        .partialFilterExpression(Filters.eq("metadata.sprite", true)));
+    }
+
+    /**
+     * Sprite sheet of the user's photos among the requested ids
+     * @throws IllegalArgumentException for too many ids or an unknown size
+     * @throws TaskRejectedException when the sheet has to be built and too many builds are running
+     */
+    public SpriteResponse getSprite(User user, SpriteRequest request) {
+        ThumbnailService.ThumbnailSize size = parseSize(request.getSize());
+        List<String> ids = request.getIds().stream().distinct().sorted().toList();
+        if (ids.size() > maxPhotos) {
+            throw new IllegalArgumentException("At most " + maxPhotos + " photos per sprite");
+        }
+
+        Query query = new Query(Criteria.where("_id").in(ids).and("userId").is(user.getId()));
+        query.fields().include("url");
+        // Duplicate uploads share their stored file, and so their thumbnails
+        Map<String, List<String>> photosByThumbnail = new HashMap<>();
+        for (Photo photo : mongoTemplate.find(query, Photo.class)) {
+            String url = photo.getUrl();
+            if (url != null && url.startsWith(IMAGE_URL_PREFIX)) {
+                String stored = url.substring(IMAGE_URL_PREFIX.length());
+                photosByThumbnail.computeIfAbsent(ThumbnailService.getDerivativeFilename(stored, size),
+                        name -> new ArrayList<>()).add(photo.getId());
+            }
+        }
+
+        // Layout follows photo id order, so the same set gives the same sheet whatever the request order
+        Map<String, GridFSFile> thumbnails = new HashMap<>();
+        gridFsTemplate.find(new Query(Criteria.where("filename").in(photosByThumbnail.keySet())))
+                .forEach(file -> photosByThumbnail.get(file.getFilename())
+                        .forEach(photoId -> thumbnails.put(photoId, file)));
+        List<String> photoIds = ids.stream().filter(thumbnails::containsKey).toList();
+        if (photoIds.isEmpty()) {
+            return new SpriteResponse(null, 0, 0, List.of());
+        }
+
+        String filename = spriteFilename(user, size, photoIds, thumbnails);
+        GridFSFile existing = findSprite(filename);
+        if (existing != null) {
+            return toResponse(existing);
+        }
+        // A shared view asks for the same sheet from many clients at once, build it once
+        return builds.execute(filename, () -> {
+            GridFSFile built = findSprite(filename);
+            return built != null ? toResponse(built) : buildWithPermit(user, size, filename, photoIds, thumbnails);
+        });
+    }
+
+    /**
+     * Delete the sprite sheets containing a photo
+     */
+    public void deleteSprites(String photoId) {
+        Query query = new Query(Criteria.where("metadata.sprite").is(true).and("metadata.photoIds").is(photoId));
+        List<String> fileIds = new ArrayList<>();
+        gridFsTemplate.find(query).forEach(file -> fileIds.add(file.getObjectId().toHexString()));
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        gridFsTemplate.delete(query);
+        blobDiskCache.evict(fileIds);
+        log.info("Deleted {} sprite sheets containing photo {}", fileIds.size(), photoId);
+    }
+
+    /**
+     * Delete sheets older than app.sprites.ttl, views still using one get it rebuilt
+     */
+    @Scheduled(fixedDelayString = "${app.sprites.cleanup-interval-ms:3600000}")
+    public void cleanupExpiredSprites() {
+        Date cutoff = Date.from(Instant.now().minus(ttl));
+        Query query = new Query(Criteria.where("metadata.sprite").is(true).and("uploadDate").lt(cutoff));
+        List<String> fileIds = new ArrayList<>();
+        gridFsTemplate.find(query).forEach(file -> fileIds.add(file.getObjectId().toHexString()));
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        gridFsTemplate.delete(new Query(Criteria.where("_id").in(fileIds.stream().map(ObjectId::new).toList())));
+        blobDiskCache.evict(fileIds);
+        log.info("Deleted {} expired sprite sheets", fileIds.size());
+    }
+
+    private SpriteResponse buildWithPermit(User user, ThumbnailService.ThumbnailSize size, String filename,
+                                           List<String> photoIds, Map<String, GridFSFile> thumbnails) {
+        try {
+            if (!buildPermits.tryAcquire(buildWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new TaskRejectedException("Too many sprite builds running");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to build sprite");
+        }
+        try {
+            return build(user, size, filename, photoIds, thumbnails);
+        } finally {
+            buildPermits.release();
+        }
+    }
+
+    /**
+     * Read the thumbnails in parallel, draw them on a square-ish grid of
+     * cells the size of the thumbnail long edge and store the sheet.
+     * Reads run at most app.sprites.read-parallelism ahead of drawing, so
+     * only that many decoded thumbnails are held besides the sheet.
+     */
+    private SpriteResponse build(User user, ThumbnailService.ThumbnailSize size, String filename,
+                                 List<String> photoIds, Map<String, GridFSFile> thumbnails) {
+        long start = System.currentTimeMillis();
+        GridFSBucket gridFsBucket = GridFSBuckets.create(mongoTemplate.getDb(), bucket);
+        List<Future<BufferedImage>> reads = new ArrayList<>(photoIds.size());
+
+        int cell = size.getLongEdge();
+        int columns = (int) Math.ceil(Math.sqrt(photoIds.size()));
+        int rows = (photoIds.size() + columns - 1) / columns;
+        BufferedImage sheet = new BufferedImage(columns * cell, rows * cell, BufferedImage.TYPE_INT_RGB);
+        List<SpriteOffsetDTO> offsets = new ArrayList<>(photoIds.size());
+        Graphics2D g = sheet.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+            for (int i = 0; i < photoIds.size(); i++) {
+                while (reads.size() < photoIds.size() && reads.size() < i + readParallelism) {
+                    GridFsFileResource thumbnail = new GridFsFileResource(gridFsBucket,
+                            thumbnails.get(photoIds.get(reads.size())));
+                    reads.add(executor.submit(() -> readThumbnail(thumbnail)));
+                }
+                BufferedImage image;
+                try {
+                    image = reads.get(i).get();
+                } catch (ExecutionException e) {
+                    log.warn("Skipping thumbnail of photo {} in sprite: {}", photoIds.get(i), e.getCause().getMessage());
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while building sprite");
+                } finally {
+                    // A finished future keeps its result, drop it so the thumbnail can be collected once drawn
+                    reads.set(i, null);
+                }
+                if (image == null) {
+                    continue;
+                }
+                if (image.getWidth() > cell || image.getHeight() > cell) {
+                    image = ImageScaler.scaleToFit(image, cell);
+                }
+                int x = (i % columns) * cell;
+                int y = (i / columns) * cell;
+                g.drawImage(image, x, y, null);
+                offsets.add(new SpriteOffsetDTO(photoIds.get(i), x, y, image.getWidth(), image.getHeight()));
+            }
+        } finally {
+            g.dispose();
+            reads.forEach(read -> {
+                if (read != null) {
+                    read.cancel(true);
+                }
+            });
+        }
+
+        byte[] data;
+        String contentHash;
+        try {
+            data = ImageScaler.encodeJpeg(sheet, SPRITE_QUALITY);
+            contentHash = PhotoService.computeContentHash(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode sprite: " + e.getMessage(), e);
+        }
+        List<Document> offsetDocuments = offsets.stream()
+                .map(offset -> new Document("id", offset.getId())
+                        .append("x", offset.getX()).append("y", offset.getY())
+                        .append("width", offset.getWidth()).append("height", offset.getHeight()))
+                .toList();
+        Document metadata = new Document("userId", user.getId())
+                .append("sprite", true)
+                .append("contentHash", contentHash)
+                .append("photoIds", photoIds)
+                .append("width", sheet.getWidth())
+                .append("height", sheet.getHeight())
+                .append("offsets", offsetDocuments);
+        ObjectId fileId = gridFsTemplate.store(new ByteArrayInputStream(data), filename, "image/jpeg", metadata);
+        blobDiskCache.put(fileId.toHexString(), data);
+
+        log.info("Built sprite of {} thumbnails ({} bytes) for user {} in {} ms",
+                offsets.size(), data.length, user.getUsername(), System.currentTimeMillis() - start);
+        return new SpriteResponse(IMAGE_URL_PREFIX + filename, sheet.getWidth(), sheet.getHeight(), offsets);
+    }
+
+    /**
+     * Decode a thumbnail, from the blob disk cache when possible
+     */
+    private BufferedImage readThumbnail(GridFsFileResource thumbnail) {
+        Path local = blobDiskCache.get(thumbnail);
+        try (InputStream inputStream = local != null ? Files.newInputStream(local) : thumbnail.getInputStream()) {
+            return ImageIO.read(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read " + thumbnail.getFilename() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private GridFSFile findSprite(String filename) {
+        return gridFsTemplate.findOne(new Query(Criteria.where("filename").is(filename)));
+    }
+
+    private SpriteResponse toResponse(GridFSFile file) {
+        Document metadata = file.getMetadata();
+        List<SpriteOffsetDTO> offsets = metadata.getList("offsets", Document.class).stream()
+                .map(offset -> new SpriteOffsetDTO(offset.getString("id"), offset.getInteger("x"),
+                        offset.getInteger("y"), offset.getInteger("width"), offset.getInteger("height")))
+                .toList();
+        return new SpriteResponse(IMAGE_URL_PREFIX + file.getFilename(),
+                metadata.getInteger("width"), metadata.getInteger("height"), offsets);
+    }
+
+    /**
+     * Name from a hash of user, size and each photo's thumbnail file id, which changes when it is regenerated
+     */
+    private static String spriteFilename(User user, ThumbnailService.ThumbnailSize size, List<String> photoIds,
+                                         Map<String, GridFSFile> thumbnails) {
+        MessageDigest digest = PhotoService.newContentDigest();
+        digest.update((user.getId() + ":" + size.getSuffix()).getBytes(StandardCharsets.UTF_8));
+        for (String photoId : photoIds) {
+            digest.update((":" + photoId + "=" + thumbnails.get(photoId).getObjectId().toHexString())
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return SPRITE_PREFIX + HexFormat.of().formatHex(digest.digest()) + ".jpg";
+    }
+
+    private static ThumbnailService.ThumbnailSize parseSize(String param) {
+        if (param == null || param.isBlank()
+                || ThumbnailService.ThumbnailSize.MARKER.getSuffix().equalsIgnoreCase(param)) {
+            return ThumbnailService.ThumbnailSize.MARKER;
+        }
+        if (ThumbnailService.ThumbnailSize.GRID.getSuffix().equalsIgnoreCase(param)) {
+            return ThumbnailService.ThumbnailSize.GRID;
+        }
+        throw new IllegalArgumentException("size must be marker or grid");
+    }
+}
@@ -0,0 +1,139 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Photo;
+import com.geophoto.util.ImageScaler;
+import com.mongodb.BasicDBObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thumbnail Service
+ * Generates fixed-size JPEG derivatives of a photo and stores them in GridFS
+ * next to the original, e.g. {uuid}_marker.jpg for {uuid}.jpg
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ThumbnailService {
+    
+    private static final String IMAGE_URL_PREFIX = "/api/photos/image/";
+    
+    private final GridFsTemplate gridFsTemplate;
+    private final BlobDiskCache blobDiskCache;
+    
+    /**
+     * Derivative sizes (long edge in pixels), largest first
+     */
+    public enum ThumbnailSize {
+        PREVIEW("preview", 1024, 0.85f),
+        GRID("grid", 256, 0.8f),
+        MARKER("marker", 64, 0.75f);
+        
+        private final String suffix;
+        private final int longEdge;
+        private final float quality;
+        
+        ThumbnailSize(String suffix, int longEdge, float quality) {
+            this.suffix = suffix;
+            this.longEdge = longEdge;
+            this.quality = quality;
+        }
+        
+        public String getSuffix() {
+            return suffix;
+        }
+        
+        public int getLongEdge() {
+            return longEdge;
+        }
+    }
+    
+    /**
+     * Generate all derivatives from the original stream
+     * The original is decoded once (subsampled), each smaller size is
+     * scaled down from the previous one.
+     *
+     * @return URL of the smallest derivative, or null if the format cannot be decoded
+     */
+    public String generateThumbnails(Photo photo, InputStream original) throws IOException {
+        BufferedImage image = ImageScaler.readSubsampled(original, ThumbnailSize.PREVIEW.getLongEdge());
+        if (image == null) {
+            log.warn("No image decoder available for photo {}, skipping thumbnails", photo.getId());
+            return null;
+        }
+        image = ImageScaler.applyOrientation(image, photo.getOrientation());
+        
+        String filename = getStoredFilename(photo);
+        String smallestUrl = null;
+        for (ThumbnailSize size : ThumbnailSize.values()) {
+            image = ImageScaler.scaleToFit(image, size.getLongEdge());
+            String derivativeName = getDerivativeFilename(filename, size);
+            
+            // Replace an existing derivative so reprocessing stays idempotent
+            deleteFiles(new Query(Criteria.where("filename").is(derivativeName)));
+            
+            byte[] encoded = ImageScaler.encodeJpeg(image, size.quality);
+            BasicDBObject metadata = new BasicDBObject("userId", photo.getUserId());
+            metadata.put("derivativeOf", filename);
+            metadata.put("variant", size.getSuffix());
+            metadata.put("contentHash", PhotoService.computeContentHash(new ByteArrayInputStream(encoded)));
+            ObjectId fileId = gridFsTemplate.store(new ByteArrayInputStream(encoded), derivativeName,
+                    "image/jpeg", metadata);
+            blobDiskCache.put(fileId.toHexString(), encoded);
+            
+            smallestUrl = IMAGE_URL_PREFIX + derivativeName;
+        }
+        
+        log.info("Generated thumbnails for photo {}", photo.getId());
+        return smallestUrl;
+    }
+    
+    /**
+     * Delete all derivatives of a stored original
+     */
+    public void deleteThumbnails(String filename) {
+        deleteFiles(new Query(Criteria.where("metadata.derivativeOf").is(filename)));
+    }
+    
+    /**
+     * Delete GridFS files and drop their cached copies, resized variants included
+     */
+    private void deleteFiles(Query query) {
+        List<String> fileIds = new ArrayList<>();
+        gridFsTemplate.find(query).forEach(file -> fileIds.add(file.getObjectId().toHexString()));
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        gridFsTemplate.delete(query);
+        blobDiskCache.evict(fileIds);
+    }
+    
+    /**
+     * Name of a derivative in GridFS, e.g. {uuid}_grid.jpg
+     */
+    public static String getDerivativeFilename(String filename, ThumbnailSize size) {
+        int lastDotIndex = filename.lastIndexOf('.');
+        String baseName = lastDotIndex == -1 ? filename : filename.substring(0, lastDotIndex);
+        return baseName + "_" + size.getSuffix() + ".jpg";
+    }
+    
+    /**
+     * Filename of the original: GridFS filename or legacy upload file name
+     */
+    private String getStoredFilename(Photo photo) {
+        String url = photo.getUrl();
+        return url.substring(url.lastIndexOf('/') + 1);
+    }
+}
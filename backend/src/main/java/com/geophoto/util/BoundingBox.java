@@ -0,0 +1,156 @@
+package com.geophoto.util;
+
+import lombok.Getter;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounding Box
+ * Map viewport in degrees, parsed from "minLon,minLat,maxLon,maxLat".
+ * A box with minLon greater than maxLon crosses the antimeridian.
+ */
+@Getter
+public class BoundingBox {
+
+    // Polygon edges are geodesics, not parallels: split them so they stay within meters of the parallel
+    private static final double MAX_EDGE_SEGMENT = 0.5;
+    // Keep every polygon well below a hemisphere
+    private static final double MAX_PIECE_WIDTH = 90;
+    // Covers the remaining geodesic bulge, results are filtered on exact ranges afterwards
+    private static final double PADDING = 0.001;
+    private static final double MAX_POLYGON_LAT = 89.9;
+
+    private final double minLon;
+    private final double minLat;
+    private final double maxLon;
+    private final double maxLat;
+    private final boolean worldWide;
+
+    public BoundingBox(double minLon, double minLat, double maxLon, double maxLat) {
+        if (minLat < -90 || maxLat > 90 || minLat > maxLat) {
+            throw new IllegalArgumentException("Invalid bbox latitude range");
+        }
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        // Leaflet reports longitudes past ±180 once the map has been panned around the world
+        this.worldWide = maxLon - minLon >= 360;
+        this.minLon = worldWide ? -180 : wrapLongitude(minLon);
+        this.maxLon = worldWide ? 180 : wrapLongitude(maxLon);
+    }
+
+    /**
+     * Parse "minLon,minLat,maxLon,maxLat"
+     * @throws IllegalArgumentException when the value is malformed
+     */
+    public static BoundingBox parse(String bbox) {
+        String[] parts = bbox == null ? new String[0] : bbox.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox must be minLon,minLat,maxLon,maxLat");
+        }
+        double[] values = new double[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                values[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bbox must be minLon,minLat,maxLon,maxLat");
+            }
+            if (!Double.isFinite(values[i])) {
+                throw new IllegalArgumentException("bbox must be minLon,minLat,maxLon,maxLat");
+            }
+        }
+        return new BoundingBox(values[0], values[1], values[2], values[3]);
+    }
+
+    public boolean crossesAntimeridian() {
+        return minLon > maxLon;
+    }
+
+    /**
+     * Width in degrees of longitude
+     */
+    public double getWidth() {
+        return crossesAntimeridian() ? 360 - minLon + maxLon : maxLon - minLon;
+    }
+
+    public double getHeight() {
+        return maxLat - minLat;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < minLat || latitude > maxLat) {
+            return false;
+        }
+        if (crossesAntimeridian()) {
+            return longitude >= minLon || longitude <= maxLon;
+        }
+        return longitude >= minLon && longitude <= maxLon;
+    }
+
+    /**
+     * Longitude ranges [from, to] covered by the box, two when it crosses the antimeridian
+     */
+    public List<double[]> getLongitudeRanges() {
+        List<double[]> ranges = new ArrayList<>(2);
+        if (crossesAntimeridian()) {
+            ranges.add(new double[]{minLon, 180});
+            if (maxLon > -180) {
+                ranges.add(new double[]{-180, maxLon});
+            }
+        } else {
+            ranges.add(new double[]{minLon, maxLon});
+        }
+        return ranges;
+    }
+
+    /**
+     * GeoJSON polygons covering the box for $geoWithin, each at most 90° wide
+     */
+    public List<GeoJsonPolygon> toPolygons() {
+        double south = Math.max(minLat - PADDING, -MAX_POLYGON_LAT);
+        double north = Math.min(maxLat + PADDING, MAX_POLYGON_LAT);
+        if (north <= south) {
+            north = Math.min(south + PADDING, MAX_POLYGON_LAT);
+            south = north - PADDING;
+        }
+
+        List<GeoJsonPolygon> polygons = new ArrayList<>();
+        for (double[] range : getLongitudeRanges()) {
+            double from = range[0];
+            double to = Math.max(range[1], from + PADDING);
+            int pieces = (int) Math.ceil((to - from) / MAX_PIECE_WIDTH);
+            double pieceWidth = (to - from) / pieces;
+            for (int i = 0; i < pieces; i++) {
+                double west = from + i * pieceWidth;
+                double east = i == pieces - 1 ? to : west + pieceWidth;
+                polygons.add(rectangle(west, south, east, north));
+            }
+        }
+        return polygons;
+    }
+
+    private static GeoJsonPolygon rectangle(double west, double south, double east, double north) {
+        int segments = Math.max(1, (int) Math.ceil((east - west) / MAX_EDGE_SEGMENT));
+        double step = (east - west) / segments;
+
+        List<Point> ring = new ArrayList<>(2 * segments + 3);
+        for (int i = 0; i <= segments; i++) {
+            ring.add(new Point(i == segments ? east : west + i * step, south));
+        }
+        for (int i = segments; i >= 0; i--) {
+            ring.add(new Point(i == segments ? east : west + i * step, north));
+        }
+        ring.add(new Point(west, south));
+        return new GeoJsonPolygon(ring);
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude >= -180 && longitude <= 180) {
+            return longitude;
+        }
+        double wrapped = ((longitude + 180) % 360 + 360) % 360 - 180;
+        return wrapped == -180 && longitude > 0 ? 180 : wrapped;
+    }
+}
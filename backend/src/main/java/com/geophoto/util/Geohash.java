@@ -0,0 +1,112 @@
+package com.geophoto.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geohash
+ * Base32 geohash encoding. A geohash of precision p splits the world into
+ * a grid of 2^ceil(5p/2) columns by 2^floor(5p/2) rows, so cells can be
+ * addressed by their column and row and a prefix is always the enclosing
+ * cell at a lower precision.
+ */
+public final class Geohash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        return fromCell(column(longitude, precision), row(latitude, precision), precision);
+    }
+
+    /**
+     * Width of a cell in degrees of longitude
+     */
+    public static double cellWidth(int precision) {
+        return 360.0 / (1L << lonBits(precision));
+    }
+
+    /**
+     * Height of a cell in degrees of latitude
+     */
+    public static double cellHeight(int precision) {
+        return 180.0 / (1L << latBits(precision));
+    }
+
+    /**
+     * Geohashes of all cells intersecting the box
+     */
+    public static List<String> covering(BoundingBox box, int precision) {
+        long firstRow = row(box.getMinLat(), precision);
+        long lastRow = row(box.getMaxLat(), precision);
+        List<String> cells = new ArrayList<>();
+        for (double[] range : box.getLongitudeRanges()) {
+            long firstColumn = column(range[0], precision);
+            long lastColumn = column(range[1], precision);
+            for (long r = firstRow; r <= lastRow; r++) {
+                for (long c = firstColumn; c <= lastColumn; c++) {
+                    cells.add(fromCell(c, r, precision));
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Number of cells {@link #covering} would return, without building them
+     */
+    public static long coveringSize(BoundingBox box, int precision) {
+        long rows = row(box.getMaxLat(), precision) - row(box.getMinLat(), precision) + 1;
+        long columns = 0;
+        for (double[] range : box.getLongitudeRanges()) {
+            columns += column(range[1], precision) - column(range[0], precision) + 1;
+        }
+        return rows * columns;
+    }
+
+    private static long column(double longitude, int precision) {
+        long columns = 1L << lonBits(precision);
+        return Math.max(0, Math.min(columns - 1, (long) Math.floor((longitude + 180) / 360 * columns)));
+    }
+
+    private static long row(double latitude, int precision) {
+        long rows = 1L << latBits(precision);
+        return Math.max(0, Math.min(rows - 1, (long) Math.floor((latitude + 90) / 180 * rows)));
+    }
+
+    private static int lonBits(int precision) {
+        return (5 * precision + 1) / 2;
+    }
+
+    private static int latBits(int precision) {
+        return 5 * precision / 2;
+    }
+
+    /**
+     * Interleave column and row bits (longitude first) into base32
+     */
+    private static String fromCell(long column, long row, int precision) {
+        int lonBit = lonBits(precision);
+        int latBit = latBits(precision);
+        char[] hash = new char[precision];
+        int value = 0;
+        for (int i = 0; i < 5 * precision; i++) {
+            int bit;
+            if (i % 2 == 0) {
+                bit = (int) (column >>> --lonBit) & 1;
+            } else {
+                bit = (int) (row >>> --latBit) & 1;
+            }
+            value = (value << 1) | bit;
+            if (i % 5 == 4) {
+                hash[i / 5] = BASE32[value];
+                value = 0;
+            }
+        }
+        return new String(hash);
+    }
+}
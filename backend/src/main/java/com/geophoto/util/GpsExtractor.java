@@ -2,17 +2,39 @@ package com.geophoto.util;
 
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
+import com.drew.imaging.jpeg.JpegProcessingException;
+import com.drew.imaging.jpeg.JpegSegmentData;
+import com.drew.imaging.jpeg.JpegSegmentReader;
+import com.drew.imaging.jpeg.JpegSegmentType;
+import com.drew.imaging.tiff.TiffProcessingException;
+import com.drew.imaging.tiff.TiffReader;
+import com.drew.lang.ByteArrayReader;
 import com.drew.lang.GeoLocation;
+import com.drew.lang.RandomAccessReader;
+import com.drew.lang.StreamReader;
+import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifReader;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.ExifTiffHandler;
 import com.drew.metadata.exif.GpsDirectory;
+import com.drew.metadata.gif.GifHeaderDirectory;
+import com.drew.metadata.heif.HeifDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.jpeg.JpegReader;
+import com.drew.metadata.png.PngDirectory;
+import com.drew.metadata.webp.WebpDirectory;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.io.InputStream;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 
 /**
  * GPS Extractor Utility
@@ -21,71 +43,329 @@ import java.util.Date;
 @Slf4j
 public class GpsExtractor {
     
+    private static final int TAG_MAKERNOTE = 0x927C;
+    
     /**
-     * Extract GPS coordinates from image file
-     * @return GeoLocation object containing latitude and longitude, or null if not available
+     * Opens a fresh stream over the whole file, used for the full-read fallback
      */
-    public static GeoLocation extractGpsCoordinates(File imageFile) throws ImageProcessingException, IOException {
-        Metadata metadata = ImageMetadataReader.readMetadata(imageFile);
-        return extractGpsFromMetadata(metadata, imageFile.getName());
+    @FunctionalInterface
+    public interface StreamOpener {
+        InputStream open() throws IOException;
     }
-
+    
     /**
-     * Extract GPS coordinates from input stream
-     * @return GeoLocation object containing latitude and longitude, or null if not available
+     * Read metadata from at most {@code maxPrefixBytes} of the file, falling
+     * back to a full parse of a freshly opened stream only when the header
+     * does not fit into the prefix.
      */
-    public static GeoLocation extractGpsCoordinates(java.io.InputStream inputStream, String filename) throws ImageProcessingException, IOException {
-        Metadata metadata = ImageMetadataReader.readMetadata(inputStream);
-        return extractGpsFromMetadata(metadata, filename);
+    public static PhotoMetadata read(StreamOpener opener, int maxPrefixBytes, String filename)
+            throws ImageProcessingException, IOException {
+        PhotoMetadata metadata;
+        try (InputStream inputStream = opener.open()) {
+            metadata = readHeader(inputStream, maxPrefixBytes, filename);
+        }
+        if (metadata != null) {
+            return metadata;
+        }
+        try (InputStream inputStream = opener.open()) {
+            return readFull(inputStream, filename);
+        }
     }
-
-    private static GeoLocation extractGpsFromMetadata(Metadata metadata, String filename) {
-        GpsDirectory gpsDirectory = metadata.getFirstDirectoryOfType(GpsDirectory.class);
+    
+    /**
+     * Read at most {@code maxPrefixBytes} from the stream and parse them
+     * @return metadata, or null if the header is larger than the prefix
+     */
+    public static PhotoMetadata readHeader(InputStream inputStream, int maxPrefixBytes, String filename) throws IOException {
+        byte[] header = inputStream.readNBytes(maxPrefixBytes);
+        boolean truncated = header.length == maxPrefixBytes && inputStream.read() != -1;
+        return readHeader(header, truncated, filename);
+    }
+    
+    /**
+     * Parse metadata from the first bytes of a file
+     * JPEG and TIFF-based files (including most RAW formats) take a fast path
+     * that only decodes the EXIF IFD0, ExifSubIFD and GPS directories (plus the
+     * JPEG frame header for dimensions) and skips maker notes, XMP, ICC
+     * profiles and embedded thumbnails. Other formats go
+     * through the generic reader on the prefix.
+     *
+     * @param header First bytes of the file
+     * @param truncated True when the file is longer than the header
+     * @return metadata, or null if the header is larger than the prefix and a full read is needed
+     */
+    public static PhotoMetadata readHeader(byte[] header, boolean truncated, String filename) {
+        long start = System.nanoTime();
+        try {
+            Metadata metadata;
+            boolean complete;
+            if (isJpeg(header)) {
+                metadata = readJpegHeader(header);
+                // EXIF is in APP1, which comes before the frame header: once SOF is in the prefix nothing is missing
+                complete = reachesFrameHeader(header);
+            } else if (isTiff(header)) {
+                // IFDs pointing past the prefix are reported as errors
+                metadata = readTiffExif(header, 0);
+                complete = true;
+            } else {
+                metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(header));
+                complete = metadata.containsDirectoryOfType(ExifSubIFDDirectory.class);
+            }
+            
+            if (truncated && (hasErrors(metadata) || !complete)) {
+                log.debug("Header of {} incomplete in first {} bytes", filename, header.length);
+                return null;
+            }
+            
+            log.debug("Parsed {} header bytes of {} in {} µs", header.length, filename,
+                    (System.nanoTime() - start) / 1000);
+            return toPhotoMetadata(metadata, filename);
+            
+        } catch (ImageProcessingException | IOException e) {
+            if (truncated) {
+                log.debug("Header of {} exceeds first {} bytes", filename, header.length);
+                return null;
+            }
+            // The whole file was available and could not be parsed
+            log.warn("Could not read metadata from image: {}", filename, e);
+            return PhotoMetadata.EMPTY;
+        }
+    }
+    
+    /**
+     * Parse metadata from the whole stream with the generic reader
+     */
+    public static PhotoMetadata readFull(InputStream inputStream, String filename) throws ImageProcessingException, IOException {
+        return toPhotoMetadata(ImageMetadataReader.readMetadata(inputStream), filename);
+    }
+    
+    /**
+     * Build the immutable metadata record from parsed metadata
+     * All fields are collected in a single pass over the directories; for
+     * repeated directories (e.g. several IFDs in RAW files) the first wins.
+     */
+    public static PhotoMetadata toPhotoMetadata(Metadata metadata, String filename) {
+        GeoLocation location = null;
+        Double altitude = null;
+        Double heading = null;
+        Date gpsDate = null;
+        Date takenAt = null;
+        String timeZoneOffset = null;
+        String make = null;
+        String model = null;
+        Integer orientation = null;
+        Integer width = null;
+        Integer height = null;
+        Integer exifWidth = null;
+        Integer exifHeight = null;
         
-        if (gpsDirectory != null && gpsDirectory.getGeoLocation() != null) {
-            GeoLocation location = gpsDirectory.getGeoLocation();
-            log.info("Extracted GPS coordinates: Lat={}, Lon={}", location.getLatitude(), location.getLongitude());
-            return location;
+        for (Directory directory : metadata.getDirectories()) {
+            if (directory instanceof GpsDirectory gps) {
+                if (location == null) {
+                    location = gps.getGeoLocation();
+                }
+                if (altitude == null && gps.containsTag(GpsDirectory.TAG_ALTITUDE)) {
+                    double value = gps.getRational(GpsDirectory.TAG_ALTITUDE).doubleValue();
+                    Integer ref = gps.getInteger(GpsDirectory.TAG_ALTITUDE_REF);
+                    altitude = ref != null && ref == 1 ? -value : value;
+                }
+                if (heading == null && gps.containsTag(GpsDirectory.TAG_IMG_DIRECTION)) {
+                    heading = gps.getRational(GpsDirectory.TAG_IMG_DIRECTION).doubleValue();
+                }
+                if (gpsDate == null) {
+                    gpsDate = gps.getGpsDate();
+                }
+            } else if (directory instanceof ExifSubIFDDirectory exif) {
+                if (takenAt == null) {
+                    takenAt = exif.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
+                }
+                if (timeZoneOffset == null) {
+                    timeZoneOffset = exif.getString(ExifSubIFDDirectory.TAG_TIME_ZONE_ORIGINAL);
+                }
+                if (exifWidth == null) {
+                    exifWidth = exif.getInteger(ExifSubIFDDirectory.TAG_EXIF_IMAGE_WIDTH);
+                    exifHeight = exif.getInteger(ExifSubIFDDirectory.TAG_EXIF_IMAGE_HEIGHT);
+                }
+            } else if (directory instanceof ExifIFD0Directory ifd0) {
+                if (make == null) {
+                    make = trimToNull(ifd0.getString(ExifIFD0Directory.TAG_MAKE));
+                }
+                if (model == null) {
+                    model = trimToNull(ifd0.getString(ExifIFD0Directory.TAG_MODEL));
+                }
+                if (orientation == null) {
+                    orientation = ifd0.getInteger(ExifIFD0Directory.TAG_ORIENTATION);
+                }
+                if (exifWidth == null) {
+                    // TIFF-based files: the first IFD describes the main image
+                    exifWidth = ifd0.getInteger(ExifIFD0Directory.TAG_IMAGE_WIDTH);
+                    exifHeight = ifd0.getInteger(ExifIFD0Directory.TAG_IMAGE_HEIGHT);
+                }
+            } else if (width == null) {
+                // Dimensions from the container itself are more reliable than EXIF
+                if (directory instanceof JpegDirectory) {
+                    width = directory.getInteger(JpegDirectory.TAG_IMAGE_WIDTH);
+                    height = directory.getInteger(JpegDirectory.TAG_IMAGE_HEIGHT);
+                } else if (directory instanceof PngDirectory) {
+                    width = directory.getInteger(PngDirectory.TAG_IMAGE_WIDTH);
+                    height = directory.getInteger(PngDirectory.TAG_IMAGE_HEIGHT);
+                } else if (directory instanceof HeifDirectory) {
+                    width = directory.getInteger(HeifDirectory.TAG_IMAGE_WIDTH);
+                    height = directory.getInteger(HeifDirectory.TAG_IMAGE_HEIGHT);
+                } else if (directory instanceof WebpDirectory) {
+                    width = directory.getInteger(WebpDirectory.TAG_IMAGE_WIDTH);
+                    height = directory.getInteger(WebpDirectory.TAG_IMAGE_HEIGHT);
+                } else if (directory instanceof GifHeaderDirectory) {
+                    width = directory.getInteger(GifHeaderDirectory.TAG_IMAGE_WIDTH);
+                    height = directory.getInteger(GifHeaderDirectory.TAG_IMAGE_HEIGHT);
+                }
+            }
+        }
+        
+        if (width == null || height == null) {
+            width = exifWidth;
+            height = exifHeight;
+        }
+        if (location == null) {
+            log.warn("No GPS coordinates found in image: {}", filename);
         }
         
-        log.warn("No GPS coordinates found in image: {}", filename);
-        return null;
+        return PhotoMetadata.builder()
+                .latitude(location != null ? location.getLatitude() : null)
+                .longitude(location != null ? location.getLongitude() : null)
+                .takenAt(takenAt != null ? takenAt.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime() : null)
+                .timeZoneOffset(trimToNull(timeZoneOffset))
+                .altitude(altitude)
+                .heading(heading)
+                .gpsTimestamp(gpsDate != null ? gpsDate.toInstant() : null)
+                .cameraMake(make)
+                .cameraModel(model)
+                .width(width)
+                .height(height)
+                .orientation(orientation)
+                .build();
+    }
+    
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+    
+    private static boolean isJpeg(byte[] header) {
+        return header.length >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8;
     }
     
     /**
-     * Extract date/time when photo was taken
-     * @return LocalDateTime object or null if not available
+     * Whether the JPEG segments up to a start-of-frame marker all lie within the header
      */
-    public static LocalDateTime extractDateTaken(File imageFile) throws ImageProcessingException, IOException {
-        Metadata metadata = ImageMetadataReader.readMetadata(imageFile);
-        return extractDateTakenFromMetadata(metadata, imageFile.getName());
+    private static boolean reachesFrameHeader(byte[] header) {
+        int offset = 2;
+        while (offset + 4 <= header.length) {
+            if ((header[offset] & 0xFF) != 0xFF) {
+                return false;
+            }
+            int marker = header[offset + 1] & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte before a marker
+                offset++;
+                continue;
+            }
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                return true;
+            }
+            if (marker == 0xDA) {
+                // Start of scan without a frame header, nothing more to read before the image data
+                return true;
+            }
+            offset += 2 + (((header[offset + 2] & 0xFF) << 8) | (header[offset + 3] & 0xFF));
+        }
+        return false;
     }
-
+    
+    private static boolean isTiff(byte[] header) {
+        // II or MM byte order mark (covers TIFF, DNG, CR2, NEF, ARW, ORF, RW2)
+        return header.length >= 4
+                && ((header[0] == 'I' && header[1] == 'I') || (header[0] == 'M' && header[1] == 'M'));
+    }
+    
     /**
-     * Extract date/time when photo was taken from input stream
-     * @return LocalDateTime object or null if not available
+     * Decode only the APP1 EXIF and SOF (dimensions) segments of a JPEG
      */
-    public static LocalDateTime extractDateTaken(java.io.InputStream inputStream, String filename) throws ImageProcessingException, IOException {
-        Metadata metadata = ImageMetadataReader.readMetadata(inputStream);
-        return extractDateTakenFromMetadata(metadata, filename);
+    private static Metadata readJpegHeader(byte[] header) throws JpegProcessingException, IOException {
+        JpegReader jpegReader = new JpegReader();
+        List<JpegSegmentType> segmentTypes = new ArrayList<>();
+        segmentTypes.add(JpegSegmentType.APP1);
+        jpegReader.getSegmentTypes().forEach(segmentTypes::add);
+        
+        JpegSegmentData segments = JpegSegmentReader.readSegments(
+                new StreamReader(new ByteArrayInputStream(header)), segmentTypes);
+        Metadata metadata = new Metadata();
+        for (byte[] segment : segments.getSegments(JpegSegmentType.APP1)) {
+            if (ExifReader.startsWithJpegExifPreamble(segment)) {
+                processTiff(new ByteArrayReader(segment), metadata, ExifReader.JPEG_SEGMENT_PREAMBLE.length());
+            }
+        }
+        for (JpegSegmentType type : jpegReader.getSegmentTypes()) {
+            jpegReader.readJpegSegments(segments.getSegments(type), metadata, type);
+        }
+        return metadata;
     }
-
-    private static LocalDateTime extractDateTakenFromMetadata(Metadata metadata, String filename) {
-        ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+    
+    private static Metadata readTiffExif(byte[] header, int offset) throws IOException {
+        Metadata metadata = new Metadata();
+        processTiff(new ByteArrayReader(header), metadata, offset);
+        return metadata;
+    }
+    
+    private static void processTiff(ByteArrayReader reader, Metadata metadata, int offset) throws IOException {
+        try {
+            new TiffReader().processTiff(reader, new HeaderExifHandler(metadata), offset);
+        } catch (TiffProcessingException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    
+    private static boolean hasErrors(Metadata metadata) {
+        for (Directory directory : metadata.getDirectories()) {
+            if (directory.hasErrors()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * EXIF handler that only follows the ExifSubIFD and GPS pointers of IFD0
+     * and skips maker notes and the thumbnail IFD
+     */
+    private static class HeaderExifHandler extends ExifTiffHandler {
+        
+        HeaderExifHandler(Metadata metadata) {
+            super(metadata, null);
+        }
         
-        if (directory != null) {
-            Date date = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
-            if (date != null) {
-                LocalDateTime dateTime = date.toInstant()
-                        .atZone(ZoneId.systemDefault())
-                        .toLocalDateTime();
-                log.info("Extracted date taken: {}", dateTime);
-                return dateTime;
+        @Override
+        public boolean tryEnterSubIfd(int tagId) {
+            if (_currentDirectory instanceof ExifIFD0Directory
+                    && (tagId == ExifIFD0Directory.TAG_EXIF_SUB_IFD_OFFSET || tagId == ExifIFD0Directory.TAG_GPS_INFO_OFFSET)) {
+                return super.tryEnterSubIfd(tagId);
             }
+            return false;
         }
         
-        log.warn("No date taken found in image: {}", filename);
-        return null;
+        @Override
+        public boolean hasFollowerIfd() {
+            return false;
+        }
+        
+        @Override
+        public boolean customProcessTag(int tagOffset, Set<Integer> processedIfdOffsets, int tiffHeaderOffset,
+                                        RandomAccessReader reader, int tagId, int byteCount) {
+            // Consume maker notes without decoding them, store everything else as plain values
+            return tagId == TAG_MAKERNOTE;
+        }
     }
 }
-
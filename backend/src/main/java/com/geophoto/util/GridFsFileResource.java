@@ -0,0 +1,98 @@
+package com.geophoto.util;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.Document;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+
+/**
+ * GridFS File Resource
+ * A stored file as a re-readable Resource: every getInputStream() opens a
+ * new download stream, so Spring can serve byte ranges (one stream per
+ * range). Skipping to a range start moves the chunk cursor instead of
+ * reading, and chunks are fetched a few at a time, so a range request
+ * only loads the chunks it covers. Length, type and dates come from the
+ * files document without touching the chunks.
+ */
+public class GridFsFileResource extends AbstractResource {
+
+    private static final int CHUNKS_PER_BATCH = 4;
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final GridFSBucket bucket;
+    private final GridFSFile file;
+
+    public GridFsFileResource(GridFSBucket bucket, GridFSFile file) {
+        this.bucket = bucket;
+        this.file = file;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return bucket.openDownloadStream(file.getId()).batchSize(CHUNKS_PER_BATCH);
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return file.getLength();
+    }
+
+    @Override
+    public long lastModified() {
+        return file.getUploadDate().getTime();
+    }
+
+    @Override
+    public String getFilename() {
+        return file.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "GridFS file [" + file.getFilename() + "]";
+    }
+
+    /**
+     * Id of the files document, as hex for ObjectIds
+     */
+    public String getFileId() {
+        return file.getId().isObjectId() ? file.getObjectId().toHexString() : file.getId().toString();
+    }
+
+    /**
+     * Content type recorded at upload
+     */
+    public String getContentType() {
+        String contentType = metadata().getString("_contentType");
+        return contentType == null || contentType.isBlank() ? DEFAULT_CONTENT_TYPE : contentType;
+    }
+
+    /**
+     * SHA-256 of the content when it was recorded at upload, otherwise the
+     * file id, which changes whenever a name is stored again
+     */
+    public String getEntityTag() {
+        String contentHash = metadata().getString("contentHash");
+        return contentHash != null ? contentHash : getFileId();
+    }
+
+    /**
+     * Whether this is a generated thumbnail, which is replaced in place when a photo is reprocessed
+     */
+    public boolean isDerivative() {
+        return metadata().containsKey("derivativeOf");
+    }
+
+    private Document metadata() {
+        Document metadata = file.getMetadata();
+        return metadata == null ? new Document() : metadata;
+    }
+}
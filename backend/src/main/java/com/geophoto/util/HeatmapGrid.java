@@ -0,0 +1,167 @@
+package com.geophoto.util;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+
+/**
+ * Heatmap Grid
+ * Photo counts on a grid of square screen cells in Web Mercator, aligned
+ * to the world so cells stay put while panning. The cell size starts at
+ * the requested pixels and doubles until the viewport fits in
+ * maxCellsPerSide, so the grid size is bounded whatever the zoom.
+ */
+@Getter
+public class HeatmapGrid {
+
+    public static final String ENCODING = "rle-varint-base64";
+
+    public static final double MAX_LATITUDE = 85.0511287798;
+
+    private final int zoom;
+    private final double cellPixels;
+    private final long worldCells;
+    private final long firstColumn;
+    private final long firstRow;
+    private final int columns;
+    private final int rows;
+    private final int[] counts;
+    private long total;
+    private int maxCount;
+
+    public HeatmapGrid(BoundingBox box, int zoom, int cellPixels, int maxCellsPerSide) {
+        if (zoom < 0 || zoom > MapTile.MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom must be between 0 and " + MapTile.MAX_ZOOM);
+        }
+        double worldPixels = 256.0 * (1L << zoom);
+        double size = cellPixels;
+        long width;
+        long height;
+        long first;
+        long top;
+        while (true) {
+            long cells = (long) Math.ceil(worldPixels / size);
+            first = (long) Math.floor(worldX(box.getMinLon(), worldPixels) / size);
+            long last = (long) Math.floor(worldX(box.getMaxLon(), worldPixels) / size);
+            width = box.isWorldWide() ? cells : Math.floorMod(last - first, cells) + 1;
+            top = (long) Math.floor(worldY(box.getMaxLat(), worldPixels) / size);
+            long bottom = (long) Math.floor(worldY(box.getMinLat(), worldPixels) / size);
+            height = Math.min(bottom, cells - 1) - top + 1;
+            if (width <= maxCellsPerSide && height <= maxCellsPerSide) {
+                this.worldCells = cells;
+                break;
+            }
+            size *= 2;
+        }
+        this.zoom = zoom;
+        this.cellPixels = size;
+        this.firstColumn = box.isWorldWide() ? 0 : first;
+        this.firstRow = top;
+        this.columns = (int) width;
+        this.rows = (int) Math.max(height, 1);
+        this.counts = new int[columns * rows];
+    }
+
+    /**
+     * Count photos at a location, ignored outside the grid
+     */
+    public void add(double latitude, double longitude, long count) {
+        double worldPixels = getWorldPixels();
+        addCell((long) Math.floor(worldX(longitude, worldPixels) / cellPixels),
+                (long) Math.floor(worldY(latitude, worldPixels) / cellPixels), count);
+    }
+
+    /**
+     * Count photos in a world cell, as computed by {@code floor(worldPixel / cellPixels)}
+     */
+    public void addCell(long worldColumn, long worldRow, long count) {
+        long column = Math.floorMod(worldColumn - firstColumn, worldCells);
+        long row = worldRow - firstRow;
+        if (column >= columns || row < 0 || row >= rows) {
+            return;
+        }
+        int cell = (int) (row * columns + column);
+        counts[cell] = (int) Math.min(Integer.MAX_VALUE, counts[cell] + count);
+        maxCount = Math.max(maxCount, counts[cell]);
+        total += count;
+    }
+
+    /**
+     * Width of the world in pixels at the grid's zoom
+     */
+    public double getWorldPixels() {
+        return 256.0 * (1L << zoom);
+    }
+
+    /**
+     * Longitude of the grid's west edge
+     */
+    public double getWest() {
+        return columns == worldCells ? -180 : longitude(firstColumn);
+    }
+
+    /**
+     * Longitude of the grid's east edge, less than the west edge when the grid crosses the antimeridian
+     */
+    public double getEast() {
+        return columns == worldCells ? 180 : longitude(firstColumn + columns);
+    }
+
+    public double getNorth() {
+        return latitude(firstRow);
+    }
+
+    public double getSouth() {
+        return latitude(firstRow + rows);
+    }
+
+    /**
+     * Cells row by row from the north-west corner as (run length, count)
+     * pairs of unsigned LEB128 varints, base64 encoded
+     */
+    public String encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < counts.length) {
+            int value = counts[i];
+            int run = 1;
+            while (i + run < counts.length && counts[i + run] == value) {
+                run++;
+            }
+            writeVarint(out, run);
+            writeVarint(out, value);
+            i += run;
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    private double longitude(long column) {
+        double worldPixels = getWorldPixels();
+        double lon = column * cellPixels / worldPixels * 360 - 180;
+        return lon > 180 ? lon - 360 : lon;
+    }
+
+    private double latitude(long row) {
+        double worldPixels = getWorldPixels();
+        double fraction = Math.min(1, row * cellPixels / worldPixels);
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * fraction))));
+    }
+
+    private static double worldX(double longitude, double worldPixels) {
+        return Math.min((longitude + 180) / 360 * worldPixels, worldPixels - 1e-9);
+    }
+
+    private static double worldY(double latitude, double worldPixels) {
+        double lat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        return (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * worldPixels;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,201 @@
+package com.geophoto.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Image Scaler Utility
+ * Decodes, orients, downsizes and encodes images with javax.imageio
+ */
+public class ImageScaler {
+    
+    private ImageScaler() {
+    }
+    
+    /**
+     * Decode an image, subsampling while decoding so that the result is
+     * still at least twice {@code minLongEdge} on its long edge.
+     * Large originals are therefore never fully decoded into memory.
+     * @return decoded image or null if no ImageIO reader supports the format
+     */
+    public static BufferedImage readSubsampled(InputStream inputStream, int minLongEdge) throws IOException {
+        return read(inputStream, (width, height) -> Math.max(width, height) / (minLongEdge * 2));
+    }
+    
+    /**
+     * Decode an image for a box of {@code boxWidth} x {@code boxHeight} (0 = unbounded),
+     * subsampling so the decoded image is still at least twice the size it is scaled to:
+     * fitting inside the box, or covering it when {@code cover} is set
+     * @return decoded image or null if no ImageIO reader supports the format
+     */
+    public static BufferedImage readSubsampled(InputStream inputStream, int boxWidth, int boxHeight,
+                                               boolean cover) throws IOException {
+        return read(inputStream, (width, height) -> {
+            int byWidth = boxWidth > 0 ? width / (boxWidth * 2) : -1;
+            int byHeight = boxHeight > 0 ? height / (boxHeight * 2) : -1;
+            if (byWidth < 0 || byHeight < 0) {
+                return Math.max(byWidth, byHeight);
+            }
+            return cover ? Math.min(byWidth, byHeight) : Math.max(byWidth, byHeight);
+        });
+    }
+    
+    private static BufferedImage read(InputStream inputStream, IntBinaryOperator subsamplingFor) throws IOException {
+        try (ImageInputStream imageStream = ImageIO.createImageInputStream(inputStream)) {
+            if (imageStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageStream, true, true);
+                int subsampling = Math.max(1, subsamplingFor.applyAsInt(reader.getWidth(0), reader.getHeight(0)));
+                
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Scale an image so that its long edge is at most {@code maxLongEdge}.
+     * Halves repeatedly before the final step to keep bilinear quality.
+     * The result is always an opaque RGB image.
+     */
+    public static BufferedImage scaleToFit(BufferedImage source, int maxLongEdge) {
+        double ratio = Math.min(1.0, (double) maxLongEdge / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        return scale(source, targetWidth, targetHeight);
+    }
+    
+    /**
+     * Scale an image to exact dimensions (progressive bilinear downscaling)
+     */
+    public static BufferedImage scale(BufferedImage source, int targetWidth, int targetHeight) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height);
+        } while (width != targetWidth || height != targetHeight);
+        
+        return current;
+    }
+    
+    /**
+     * Cut the centered {@code width} x {@code height} region out of an image
+     */
+    public static BufferedImage cropCenter(BufferedImage source, int width, int height) {
+        width = Math.min(width, source.getWidth());
+        height = Math.min(height, source.getHeight());
+        if (width == source.getWidth() && height == source.getHeight()) {
+            return source;
+        }
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, -(source.getWidth() - width) / 2, -(source.getHeight() - height) / 2, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+    
+    /**
+     * Apply EXIF orientation (1-8) so the image is displayed upright
+     */
+    public static BufferedImage applyOrientation(BufferedImage image, Integer orientation) {
+        if (orientation == null || orientation <= 1 || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = orientation >= 5;
+        
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 2 -> { transform.translate(w, 0); transform.scale(-1, 1); }
+            case 3 -> { transform.translate(w, h); transform.rotate(Math.PI); }
+            case 4 -> { transform.translate(0, h); transform.scale(1, -1); }
+            case 5 -> { transform.rotate(Math.PI / 2); transform.scale(1, -1); }
+            case 6 -> { transform.translate(h, 0); transform.rotate(Math.PI / 2); }
+            case 7 -> { transform.scale(-1, 1); transform.translate(-h, 0); transform.translate(0, w); transform.rotate(3 * Math.PI / 2); }
+            case 8 -> { transform.translate(0, w); transform.rotate(3 * Math.PI / 2); }
+            default -> { }
+        }
+        
+        BufferedImage rotated = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rotated.createGraphics();
+        try {
+            // Transparent areas become white, as in draw()
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, rotated.getWidth(), rotated.getHeight());
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return rotated;
+    }
+    
+    /**
+     * Encode an image as JPEG with the given quality (0..1)
+     */
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+    
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            // Transparent areas (PNG/GIF) become white instead of black in JPEG output
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,76 @@
+package com.geophoto.util;
+
+import lombok.Getter;
+
+/**
+ * Map Tile
+ * A Web Mercator (slippy map) tile z/x/y and the projection of coordinates
+ * into its local pixel space.
+ */
+@Getter
+public class MapTile {
+
+    public static final int MAX_ZOOM = 24;
+
+    // Web Mercator cannot show the poles
+    private static final double MAX_LATITUDE = 85.0511287798;
+
+    private final int z;
+    private final int x;
+    private final int y;
+
+    public MapTile(int z, int x, int y) {
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom must be between 0 and " + MAX_ZOOM);
+        }
+        long tiles = 1L << z;
+        if (x < 0 || x >= tiles || y < 0 || y >= tiles) {
+            throw new IllegalArgumentException("Tile " + z + "/" + x + "/" + y + " does not exist");
+        }
+        this.z = z;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Bounds of the tile, grown by {@code buffer} tile widths on each side
+     */
+    public BoundingBox toBoundingBox(double buffer) {
+        double tiles = 1L << z;
+        double west = (x - buffer) / tiles * 360 - 180;
+        double east = (x + 1 + buffer) / tiles * 360 - 180;
+        double north = tileYToLatitude((y - buffer) / tiles);
+        double south = tileYToLatitude((y + 1 + buffer) / tiles);
+        if (east - west >= 360) {
+            return new BoundingBox(-180, south, 180, north);
+        }
+        return new BoundingBox(west, south, east, north);
+    }
+
+    /**
+     * Horizontal position of a longitude in tile pixels, 0 at the west edge
+     */
+    public double toPixelX(double longitude, int extent) {
+        double worldX = (longitude + 180) / 360 * (1L << z);
+        return (worldX - x) * extent;
+    }
+
+    /**
+     * Vertical position of a latitude in tile pixels, 0 at the north edge
+     */
+    public double toPixelY(double latitude, int extent) {
+        double lat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        double worldY = (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * (1L << z);
+        return (worldY - y) * extent;
+    }
+
+    private static double tileYToLatitude(double fraction) {
+        double clamped = Math.max(0, Math.min(1, fraction));
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * clamped))));
+    }
+
+    @Override
+    public String toString() {
+        return z + "/" + x + "/" + y;
+    }
+}
@@ -0,0 +1,64 @@
+package com.geophoto.util;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Photo Metadata
+ * Immutable result of a single metadata parse; any field may be null
+ */
+@Value
+@Builder
+public class PhotoMetadata {
+    
+    public static final PhotoMetadata EMPTY = PhotoMetadata.builder().build();
+    
+    Double latitude;
+    
+    Double longitude;
+    
+    LocalDateTime takenAt;
+    
+    /**
+     * Offset of takenAt from UTC as recorded by the camera, e.g. "+07:00"
+     */
+    String timeZoneOffset;
+    
+    /**
+     * GPS altitude in meters, negative below sea level
+     */
+    Double altitude;
+    
+    /**
+     * Direction the camera was facing, degrees 0-360
+     */
+    Double heading;
+    
+    /**
+     * GPS date/time (always UTC)
+     */
+    Instant gpsTimestamp;
+    
+    String cameraMake;
+    
+    String cameraModel;
+    
+    /**
+     * Stored pixel dimensions, before orientation is applied
+     */
+    Integer width;
+    
+    Integer height;
+    
+    /**
+     * EXIF orientation (1-8)
+     */
+    Integer orientation;
+    
+    public boolean hasLocation() {
+        return latitude != null && longitude != null;
+    }
+}
@@ -0,0 +1,91 @@
+package com.geophoto.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Prefix Capturing InputStream
+ * Passes every byte through unchanged while keeping a copy of the first
+ * {@code limit} bytes, so the header of an upload can be parsed after the
+ * stream has been consumed by another writer (e.g. GridFS).
+ */
+public class PrefixCapturingInputStream extends FilterInputStream {
+
+    private final byte[] prefix;
+    private int captured;
+    private long totalRead;
+
+    public PrefixCapturingInputStream(InputStream in, int limit) {
+        super(in);
+        this.prefix = new byte[Math.max(0, limit)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            if (captured < prefix.length) {
+                prefix[captured++] = (byte) b;
+            }
+            totalRead++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            int toCopy = Math.min(n, prefix.length - captured);
+            if (toCopy > 0) {
+                System.arraycopy(b, off, prefix, captured, toCopy);
+                captured += toCopy;
+            }
+            totalRead += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes would leave a hole in the prefix, so read them instead
+        byte[] buffer = new byte[8192];
+        long remaining = n;
+        while (remaining > 0) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Copy of the captured prefix
+     */
+    public byte[] getPrefix() {
+        return Arrays.copyOf(prefix, captured);
+    }
+    
+    /**
+     * Total number of bytes that passed through this stream
+     */
+    public long getTotalRead() {
+        return totalRead;
+    }
+
+    /**
+     * True when the underlying stream was longer than the captured prefix
+     */
+    public boolean isTruncated() {
+        return totalRead > captured;
+    }
+}
@@ -0,0 +1,507 @@
+package com.geophoto.util;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Spatial Index
+ * Static KD-tree over one user's located photos. Coordinates, capture
+ * times and ids live in parallel primitive arrays, reordered in place so
+ * every subtree is a contiguous range (left half, median, right half) and
+ * no node objects exist. Points are addressed by their position in the
+ * arrays. Nearest-neighbour search follows geokdbush: great-circle
+ * distances with a lower bound per subtree box.
+ */
+public class SpatialIndex {
+
+    // Mean radius MongoDB uses for spherical $geoNear distances
+    public static final double EARTH_RADIUS_METERS = 6_378_100;
+
+    private static final int NODE_SIZE = 64;
+    private static final int AXIS_LON = 0;
+    private static final int AXIS_LAT = 1;
+
+    private final int size;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // Epoch millis, Long.MIN_VALUE when unknown so undated photos sort last
+    private final long[] takenAt;
+    // 12-byte ObjectIds as three big-endian words
+    private final int[] ids;
+    private final String[] thumbnailUrls;
+
+    /**
+     * Index the first {@code size} entries, the arrays are taken over and reordered
+     */
+    public SpatialIndex(int size, double[] latitudes, double[] longitudes, long[] takenAt,
+                        int[] ids, String[] thumbnailUrls) {
+        this.size = size;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.takenAt = takenAt;
+        this.ids = ids;
+        this.thumbnailUrls = thumbnailUrls;
+        sort(0, size - 1, AXIS_LON);
+    }
+
+    /**
+     * Big-endian words of an ObjectId in the layout the constructor expects
+     */
+    public static void putId(int[] ids, int position, ObjectId id) {
+        byte[] bytes = id.toByteArray();
+        for (int word = 0; word < 3; word++) {
+            int offset = word * 4;
+            ids[position * 3 + word] = (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                    | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getLatitude(int point) {
+        return latitudes[point];
+    }
+
+    public double getLongitude(int point) {
+        return longitudes[point];
+    }
+
+    public String getThumbnailUrl(int point) {
+        return thumbnailUrls[point];
+    }
+
+    public String getId(int point) {
+        byte[] bytes = new byte[12];
+        for (int word = 0; word < 3; word++) {
+            int value = ids[point * 3 + word];
+            for (int b = 0; b < 4; b++) {
+                bytes[word * 4 + b] = (byte) (value >>> (24 - 8 * b));
+            }
+        }
+        return new ObjectId(bytes).toHexString();
+    }
+
+    /**
+     * Approximate heap footprint, used for the cache memory budget
+     */
+    public long estimatedBytes() {
+        long bytes = 8L * latitudes.length + 8L * longitudes.length + 8L * takenAt.length
+                + 4L * ids.length + 4L * thumbnailUrls.length + 128;
+        for (int i = 0; i < size; i++) {
+            bytes += estimatedBytes(thumbnailUrls[i]);
+        }
+        return bytes;
+    }
+
+    public static long estimatedBytes(String value) {
+        return value == null ? 0 : 48 + value.length();
+    }
+
+    /**
+     * Points inside the box, in no particular order
+     */
+    public int[] search(BoundingBox box) {
+        return search(box, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Points inside the box taken between two epoch millis, both inclusive
+     */
+    public int[] search(BoundingBox box, long minTakenAt, long maxTakenAt) {
+        int[] result = new int[Math.min(size, 64)];
+        int count = 0;
+        int[] stack = new int[3 * 64];
+        for (double[] range : box.getLongitudeRanges()) {
+            double minLon = range[0];
+            double maxLon = range[1];
+            double minLat = box.getMinLat();
+            double maxLat = box.getMaxLat();
+
+            int top = 0;
+            if (size > 0) {
+                stack[top++] = 0;
+                stack[top++] = size - 1;
+                stack[top++] = AXIS_LON;
+            }
+            while (top > 0) {
+                int axis = stack[--top];
+                int right = stack[--top];
+                int left = stack[--top];
+
+                if (right - left <= NODE_SIZE) {
+                    for (int i = left; i <= right; i++) {
+                        if (inside(i, minLon, minLat, maxLon, maxLat)
+                                && takenAt[i] >= minTakenAt && takenAt[i] <= maxTakenAt) {
+                            if (count == result.length) {
+                                result = Arrays.copyOf(result, count * 2);
+                            }
+                            result[count++] = i;
+                        }
+                    }
+                    continue;
+                }
+
+                int m = (left + right) >>> 1;
+                if (inside(m, minLon, minLat, maxLon, maxLat)
+                        && takenAt[m] >= minTakenAt && takenAt[m] <= maxTakenAt) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = m;
+                }
+                double split = axis == AXIS_LON ? longitudes[m] : latitudes[m];
+                if (axis == AXIS_LON ? minLon <= split : minLat <= split) {
+                    stack[top++] = left;
+                    stack[top++] = m - 1;
+                    stack[top++] = 1 - axis;
+                }
+                if (axis == AXIS_LON ? maxLon >= split : maxLat >= split) {
+                    stack[top++] = m + 1;
+                    stack[top++] = right;
+                    stack[top++] = 1 - axis;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * The {@code limit} newest of the given points, newest first
+     * Ordered by capture time then id, both descending, like the photo lists.
+     */
+    public int[] newest(int[] points, int limit) {
+        int n = Math.min(limit, points.length);
+        if (n <= 0) {
+            return new int[0];
+        }
+        // Min-heap on recency keeps the n newest seen so far, the oldest of them at the root
+        int[] heap = new int[n];
+        int heapSize = 0;
+        for (int point : points) {
+            if (heapSize < n) {
+                heap[heapSize] = point;
+                siftUp(heap, heapSize++);
+            } else if (compareRecency(point, heap[0]) > 0) {
+                heap[0] = point;
+                siftDown(heap, heapSize);
+            }
+        }
+        int[] result = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+        }
+        return result;
+    }
+
+    /**
+     * Positive when the first point was taken after the second
+     */
+    public int compareRecency(int a, int b) {
+        int byTime = Long.compare(takenAt[a], takenAt[b]);
+        if (byTime != 0) {
+            return byTime;
+        }
+        for (int word = 0; word < 3; word++) {
+            int byId = Integer.compareUnsigned(ids[a * 3 + word], ids[b * 3 + word]);
+            if (byId != 0) {
+                return byId;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Up to {@code limit} points nearest to a location, closest first
+     * @param maxMeters search radius, ignored when null or not positive
+     */
+    public int[] nearest(double latitude, double longitude, int limit, Double maxMeters) {
+        double maxHaversine = maxMeters == null || maxMeters <= 0 || maxMeters >= Math.PI * EARTH_RADIUS_METERS
+                ? Double.POSITIVE_INFINITY
+                : haversine(maxMeters / EARTH_RADIUS_METERS);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+
+        List<Integer> result = new ArrayList<>(Math.min(limit, size));
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        Candidate node = size == 0 || limit <= 0 ? null : new Candidate(0, size - 1, AXIS_LON, -180, -90, 180, 90, 0);
+
+        while (node != null) {
+            if (node.right - node.left <= NODE_SIZE) {
+                for (int i = node.left; i <= node.right; i++) {
+                    offerPoint(queue, i, latitude, longitude, cosLat, maxHaversine);
+                }
+            } else {
+                int m = (node.left + node.right) >>> 1;
+                offerPoint(queue, m, latitude, longitude, cosLat, maxHaversine);
+
+                double splitLon = longitudes[m];
+                double splitLat = latitudes[m];
+                int next = 1 - node.axis;
+                Candidate low = new Candidate(node.left, m - 1, next,
+                        node.minLon, node.minLat,
+                        node.axis == AXIS_LON ? splitLon : node.maxLon,
+                        node.axis == AXIS_LAT ? splitLat : node.maxLat, 0);
+                Candidate high = new Candidate(m + 1, node.right, next,
+                        node.axis == AXIS_LON ? splitLon : node.minLon,
+                        node.axis == AXIS_LAT ? splitLat : node.minLat,
+                        node.maxLon, node.maxLat, 0);
+                low.distance = boxDistance(latitude, longitude, cosLat, low);
+                high.distance = boxDistance(latitude, longitude, cosLat, high);
+                if (low.left <= low.right && low.distance <= maxHaversine) {
+                    queue.add(low);
+                }
+                if (high.left <= high.right && high.distance <= maxHaversine) {
+                    queue.add(high);
+                }
+            }
+
+            // Points closer than every pending subtree are final
+            while (!queue.isEmpty() && queue.peek().point >= 0) {
+                result.add(queue.poll().point);
+                if (result.size() == limit) {
+                    return result.stream().mapToInt(Integer::intValue).toArray();
+                }
+            }
+            node = queue.poll();
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Great-circle distance in meters from a location to a point
+     */
+    public double distanceMeters(int point, double latitude, double longitude) {
+        double h = haversineDistance(latitude, longitude, Math.cos(Math.toRadians(latitude)), point);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(Math.min(1, h)));
+    }
+
+    private void offerPoint(PriorityQueue<Candidate> queue, int point, double latitude, double longitude,
+                            double cosLat, double maxHaversine) {
+        double distance = haversineDistance(latitude, longitude, cosLat, point);
+        if (distance <= maxHaversine) {
+            Candidate candidate = new Candidate(point, point, 0, 0, 0, 0, 0, distance);
+            candidate.point = point;
+            queue.add(candidate);
+        }
+    }
+
+    private double haversineDistance(double latitude, double longitude, double cosLat, int point) {
+        return haversine(Math.toRadians(latitude - latitudes[point]))
+                + cosLat * Math.cos(Math.toRadians(latitudes[point]))
+                * haversine(Math.toRadians(longitude - longitudes[point]));
+    }
+
+    /**
+     * Lower bound of the haversine distance from a location to any point of a subtree box
+     */
+    private static double boxDistance(double latitude, double longitude, double cosLat, Candidate box) {
+        if (longitude >= box.minLon && longitude <= box.maxLon) {
+            if (latitude < box.minLat) {
+                return haversine(Math.toRadians(box.minLat - latitude));
+            }
+            if (latitude > box.maxLat) {
+                return haversine(Math.toRadians(latitude - box.maxLat));
+            }
+            return 0;
+        }
+        // West or east of the box: the closest point lies on the nearer edge meridian
+        double haversineLon = Math.min(haversine(Math.toRadians(box.minLon - longitude)),
+                haversine(Math.toRadians(box.maxLon - longitude)));
+        double extremumLat = vertexLatitude(latitude, haversineLon);
+        if (extremumLat > box.minLat && extremumLat < box.maxLat) {
+            return partialDistance(haversineLon, cosLat, latitude, extremumLat);
+        }
+        return Math.min(partialDistance(haversineLon, cosLat, latitude, box.minLat),
+                partialDistance(haversineLon, cosLat, latitude, box.maxLat));
+    }
+
+    private static double partialDistance(double haversineLon, double cosLat, double latitude, double otherLatitude) {
+        return cosLat * Math.cos(Math.toRadians(otherLatitude)) * haversineLon
+                + haversine(Math.toRadians(latitude - otherLatitude));
+    }
+
+    /**
+     * Latitude where the great circle towards a meridian is closest to it
+     */
+    private static double vertexLatitude(double latitude, double haversineLon) {
+        double cosLon = 1 - 2 * haversineLon;
+        if (cosLon <= 0) {
+            return latitude > 0 ? 90 : -90;
+        }
+        return Math.toDegrees(Math.atan(Math.tan(Math.toRadians(latitude)) / cosLon));
+    }
+
+    private static double haversine(double theta) {
+        double s = Math.sin(theta / 2);
+        return s * s;
+    }
+
+    private boolean inside(int point, double minLon, double minLat, double maxLon, double maxLat) {
+        double lon = longitudes[point];
+        double lat = latitudes[point];
+        return lon >= minLon && lon <= maxLon && lat >= minLat && lat <= maxLat;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compareRecency(heap[i], heap[parent]) >= 0) {
+                return;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && compareRecency(heap[left], heap[smallest]) < 0) {
+                smallest = left;
+            }
+            if (right < heapSize && compareRecency(heap[right], heap[smallest]) < 0) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(heap, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        int tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+
+    /**
+     * Arrange [left, right] around its median on the axis, then each half on the other axis
+     */
+    private void sort(int left, int right, int axis) {
+        if (right - left <= NODE_SIZE) {
+            return;
+        }
+        int m = (left + right) >>> 1;
+        select(m, left, right, axis);
+        sort(left, m - 1, 1 - axis);
+        sort(m + 1, right, 1 - axis);
+    }
+
+    /**
+     * Floyd-Rivest selection: the k-th smallest on the axis ends up at k,
+     * smaller values before it and larger ones after
+     */
+    private void select(int k, int left, int right, int axis) {
+        while (right > left) {
+            if (right - left > 600) {
+                int n = right - left + 1;
+                int m = k - left + 1;
+                double z = Math.log(n);
+                double s = 0.5 * Math.exp(2 * z / 3);
+                double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * (m - n / 2.0 < 0 ? -1 : 1);
+                int newLeft = (int) Math.max(left, Math.floor(k - m * s / n + sd));
+                int newRight = (int) Math.min(right, Math.floor(k + (n - m) * s / n + sd));
+                select(k, newLeft, newRight, axis);
+            }
+
+            double t = coordinate(k, axis);
+            int i = left;
+            int j = right;
+            swapPoints(left, k);
+            if (coordinate(right, axis) > t) {
+                swapPoints(left, right);
+            }
+            while (i < j) {
+                swapPoints(i, j);
+                i++;
+                j--;
+                while (coordinate(i, axis) < t) {
+                    i++;
+                }
+                while (coordinate(j, axis) > t) {
+                    j--;
+                }
+            }
+            if (coordinate(left, axis) == t) {
+                swapPoints(left, j);
+            } else {
+                j++;
+                swapPoints(j, right);
+            }
+            if (j <= k) {
+                left = j + 1;
+            }
+            if (k <= j) {
+                right = j - 1;
+            }
+        }
+    }
+
+    private double coordinate(int point, int axis) {
+        return axis == AXIS_LON ? longitudes[point] : latitudes[point];
+    }
+
+    private void swapPoints(int i, int j) {
+        double lat = latitudes[i];
+        latitudes[i] = latitudes[j];
+        latitudes[j] = lat;
+        double lon = longitudes[i];
+        longitudes[i] = longitudes[j];
+        longitudes[j] = lon;
+        long time = takenAt[i];
+        takenAt[i] = takenAt[j];
+        takenAt[j] = time;
+        for (int word = 0; word < 3; word++) {
+            int id = ids[i * 3 + word];
+            ids[i * 3 + word] = ids[j * 3 + word];
+            ids[j * 3 + word] = id;
+        }
+        String thumbnailUrl = thumbnailUrls[i];
+        thumbnailUrls[i] = thumbnailUrls[j];
+        thumbnailUrls[j] = thumbnailUrl;
+    }
+
+    /**
+     * Pending subtree, or a single point when {@code point} is set, in the nearest-neighbour queue
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        final int left;
+        final int right;
+        final int axis;
+        final double minLon;
+        final double minLat;
+        final double maxLon;
+        final double maxLat;
+        double distance;
+        int point = -1;
+
+        Candidate(int left, int right, int axis, double minLon, double minLat, double maxLon, double maxLat,
+                  double distance) {
+            this.left = left;
+            this.right = right;
+            this.axis = axis;
+            this.minLon = minLon;
+            this.minLat = minLat;
+            this.maxLon = maxLon;
+            this.maxLat = maxLat;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+}
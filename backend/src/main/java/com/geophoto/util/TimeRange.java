@@ -0,0 +1,93 @@
+package com.geophoto.util;
+
+import lombok.Getter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Time Range
+ * Capture time filter [from, to) parsed from "from"/"to" request parameters.
+ * Both accept an ISO date or date-time; a date-only "to" includes that
+ * whole day. Once bounded, photos without a capture time are excluded.
+ */
+@Getter
+public class TimeRange {
+
+    public static final TimeRange UNBOUNDED = new TimeRange(null, null);
+
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    public TimeRange(LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Parse optional "from" and "to" parameters
+     * @throws IllegalArgumentException when a value is malformed
+     */
+    public static TimeRange parse(String from, String to) {
+        return new TimeRange(parseBound(from, false), parseBound(to, true));
+    }
+
+    private static LocalDateTime parseBound(String value, boolean end) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            if (value.length() == 10) {
+                LocalDate date = LocalDate.parse(value);
+                return (end ? date.plusDays(1) : date).atStartOfDay();
+            }
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("from/to must be yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss");
+        }
+    }
+
+    public boolean isBounded() {
+        return from != null || to != null;
+    }
+
+    /**
+     * Criteria on the takenAt field, to be combined with the other filters
+     */
+    public Criteria toCriteria() {
+        Criteria criteria = Criteria.where("takenAt");
+        if (from != null) {
+            criteria.gte(from);
+        } else {
+            criteria.ne(null);
+        }
+        if (to != null) {
+            criteria.lt(to);
+        }
+        return criteria;
+    }
+
+    /**
+     * Smallest epoch millis inside the range, in the zone takenAt is stored with
+     */
+    public long fromMillis() {
+        return from == null ? Long.MIN_VALUE + 1 : toMillis(from);
+    }
+
+    /**
+     * Largest epoch millis inside the range
+     */
+    public long toMillisInclusive() {
+        return to == null ? Long.MAX_VALUE : toMillis(to) - 1;
+    }
+
+    private static long toMillis(LocalDateTime value) {
+        return value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
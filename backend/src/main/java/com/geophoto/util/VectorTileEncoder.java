@@ -0,0 +1,196 @@
+package com.geophoto.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vector Tile Encoder
+ * Minimal Mapbox Vector Tile (spec 2.1) writer for a single layer of point
+ * features. Keys and values are deduplicated into the layer tables, the
+ * protobuf wire format is written by hand.
+ */
+public class VectorTileEncoder {
+
+    public static final String CONTENT_TYPE = "application/vnd.mapbox-vector-tile";
+
+    private static final int VERSION = 2;
+    private static final int GEOM_TYPE_POINT = 1;
+    private static final int COMMAND_MOVE_TO = 1;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+
+    private final String layerName;
+    private final int extent;
+    private final Map<String, Integer> keys = new LinkedHashMap<>();
+    private final Map<Object, Integer> values = new LinkedHashMap<>();
+    private final List<byte[]> features = new ArrayList<>();
+
+    public VectorTileEncoder(String layerName, int extent) {
+        this.layerName = layerName;
+        this.extent = extent;
+    }
+
+    public int getExtent() {
+        return extent;
+    }
+
+    public boolean isEmpty() {
+        return features.isEmpty();
+    }
+
+    /**
+     * Add a point feature at tile pixel coordinates
+     * @param properties String, Number or Boolean values, nulls are skipped
+     */
+    public void addPoint(int x, int y, Map<String, ?> properties) {
+        List<Integer> tags = new ArrayList<>(properties.size() * 2);
+        for (Map.Entry<String, ?> property : properties.entrySet()) {
+            Object value = normalize(property.getValue());
+            if (value == null) {
+                continue;
+            }
+            tags.add(keys.computeIfAbsent(property.getKey(), k -> keys.size()));
+            tags.add(values.computeIfAbsent(value, v -> values.size()));
+        }
+
+        ProtobufWriter feature = new ProtobufWriter();
+        feature.writePacked(2, tags.stream().mapToInt(Integer::intValue).toArray());
+        feature.writeVarintField(3, GEOM_TYPE_POINT);
+        feature.writePacked(4, new int[]{command(COMMAND_MOVE_TO, 1), zigZag(x), zigZag(y)});
+        features.add(feature.toByteArray());
+    }
+
+    /**
+     * Serialize the tile, an empty tile has no layer at all
+     */
+    public byte[] encode() {
+        ProtobufWriter tile = new ProtobufWriter();
+        if (features.isEmpty()) {
+            return tile.toByteArray();
+        }
+
+        ProtobufWriter layer = new ProtobufWriter();
+        layer.writeVarintField(15, VERSION);
+        layer.writeString(1, layerName);
+        for (byte[] feature : features) {
+            layer.writeBytes(2, feature);
+        }
+        for (String key : keys.keySet()) {
+            layer.writeString(3, key);
+        }
+        for (Object value : values.keySet()) {
+            layer.writeBytes(4, encodeValue(value));
+        }
+        layer.writeVarintField(5, extent);
+
+        tile.writeBytes(3, layer.toByteArray());
+        return tile.toByteArray();
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof String || value instanceof Long || value instanceof Double || value instanceof Boolean) {
+            return value;
+        }
+        return value == null ? null : value.toString();
+    }
+
+    private static byte[] encodeValue(Object value) {
+        ProtobufWriter writer = new ProtobufWriter();
+        if (value instanceof String string) {
+            writer.writeString(1, string);
+        } else if (value instanceof Double number) {
+            writer.writeDouble(3, number);
+        } else if (value instanceof Long number) {
+            if (number >= 0) {
+                writer.writeVarintField(5, number);
+            } else {
+                writer.writeVarintField(6, zigZag(number));
+            }
+        } else if (value instanceof Boolean bool) {
+            writer.writeVarintField(7, bool ? 1 : 0);
+        }
+        return writer.toByteArray();
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    /**
+     * Protocol buffers wire format writer
+     */
+    private static class ProtobufWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void writeVarintField(int field, long value) {
+            writeTag(field, WIRE_VARINT);
+            writeVarint(value);
+        }
+
+        void writeDouble(int field, double value) {
+            writeTag(field, WIRE_FIXED64);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < 8; i++) {
+                out.write((int) (bits >>> (8 * i)) & 0xFF);
+            }
+        }
+
+        void writeString(int field, String value) {
+            writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeBytes(int field, byte[] value) {
+            writeTag(field, WIRE_LENGTH_DELIMITED);
+            writeVarint(value.length);
+            out.writeBytes(value);
+        }
+
+        void writePacked(int field, int[] values) {
+            if (values.length == 0) {
+                return;
+            }
+            ProtobufWriter packed = new ProtobufWriter();
+            for (int value : values) {
+                packed.writeVarint(Integer.toUnsignedLong(value));
+            }
+            writeBytes(field, packed.toByteArray());
+        }
+
+        private void writeTag(int field, int wireType) {
+            writeVarint(((long) field << 3) | wireType);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.entity.UploadSession;
+import com.geophoto.entity.User;
+import com.geophoto.repository.UploadSessionRepository;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ResumableUploadServiceTest {
+
+    private static final byte[] CONTENT = "abcdefghij".getBytes(StandardCharsets.UTF_8);
+    private static final String CONTENT_HASH =
+            "72399361da6a7754fec986dca5b7cbaf1c810a28ded4abaf56b2106d06cb78b0";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+    @Mock
+    private PhotoService photoService;
+    @Mock
+    private GridFsTemplate gridFsTemplate;
+    @Mock
+    private MongoCollection<Document> collection;
+    @Mock
+    private GridFsResource storedFile;
+
+    private ResumableUploadService service;
+    private UploadSession session;
+    private User user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new ResumableUploadService(mongoTemplate, uploadSessionRepository, photoService, gridFsTemplate);
+        ReflectionTestUtils.setField(service, "bucket", "fs");
+        ReflectionTestUtils.setField(service, "chunkSize", 4);
+        ReflectionTestUtils.setField(service, "maxFileSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(service, "sessionTtlHours", 24L);
+
+        user = new User();
+        user.setId("user-1");
+        session = new UploadSession();
+        session.setId("session-1");
+        session.setUserId(user.getId());
+        session.setFileName("photo.jpg");
+        session.setContentType("image/jpeg");
+        session.setTotalSize(CONTENT.length);
+        session.setChunkSize(4);
+        session.setGridFsFileId(new ObjectId());
+        session.setStoredFilename("stored.jpg");
+
+        when(uploadSessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+        when(mongoTemplate.getCollection(anyString())).thenReturn(collection);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(UploadSession.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(UploadSession.class))).thenReturn(session);
+        when(gridFsTemplate.getResource("stored.jpg")).thenReturn(storedFile);
+        when(storedFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(CONTENT));
+    }
+
+    @Test
+    void retriedFinalizeUsesSameContentHashAfterFailure() throws Exception {
+        service.appendChunk(session.getId(), user, 0, new ByteArrayInputStream(CONTENT));
+        assertEquals(CONTENT.length, session.getCommittedOffset());
+
+        when(photoService.createPhotoFromStoredFile(anyString(), anyString(), any(), eq(user), anyLong(), anyString()))
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenReturn(new PhotoDTO());
+
+        assertThrows(RuntimeException.class, () -> service.finalizeUpload(session.getId(), user));
+        service.finalizeUpload(session.getId(), user);
+
+        verify(photoService, times(2)).createPhotoFromStoredFile(eq("stored.jpg"), eq("photo.jpg"), any(),
+                eq(user), eq((long) CONTENT.length), eq(CONTENT_HASH));
+    }
+}
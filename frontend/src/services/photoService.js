@@ -66,6 +66,124 @@ export const fetchPhotosWithGps = async () => {
   }
 }
 
+/**
+ * Fetch photos inside a map viewport
+ * bbox is [west, south, east, north]; returns { photos, truncated }
+ * Optional from/to (yyyy-MM-dd) keep photos taken in that period
+ */
+export const fetchPhotosWithin = async (bbox, limit, { from, to } = {}) => {
+  try {
+    const response = await apiClient.get('/photos/within', {
+      params: { bbox: bbox.join(','), limit, from, to },
+    })
+    return response.data
+  } catch (error) {
+    console.error('Error fetching photos in viewport:', error)
+    throw error
+  }
+}
+
+/**
+ * Fetch server-side clusters for a map viewport
+ * Returns { zoom, clusters, photos, truncated }; photos is filled instead of clusters when zoomed in
+ */
+export const fetchClusters = async (bbox, zoom, { from, to } = {}) => {
+  try {
+    const response = await apiClient.get('/photos/clusters', {
+      params: { bbox: bbox.join(','), zoom, from, to },
+    })
+    return response.data
+  } catch (error) {
+    console.error('Error fetching photo clusters:', error)
+    throw error
+  }
+}
+
+/**
+ * Fetch a photo density grid for a heatmap layer
+ * Returns the grid bounds and size with cells decoded into a Uint32Array,
+ * row by row from the north-west corner
+ */
+export const fetchHeatmap = async (bbox, zoom, { from, to } = {}) => {
+  try {
+    const response = await apiClient.get('/photos/heatmap', {
+      params: { bbox: bbox.join(','), zoom, from, to },
+    })
+    const { data, ...grid } = response.data
+    const bytes = Uint8Array.from(atob(data), (c) => c.charCodeAt(0))
+    const cells = new Uint32Array(grid.columns * grid.rows)
+    let offset = 0
+    let cell = 0
+    const readVarint = () => {
+      let value = 0
+      let shift = 0
+      let byte
+      do {
+        byte = bytes[offset++]
+        value += (byte & 0x7f) * 2 ** shift
+        shift += 7
+      } while (byte & 0x80)
+      return value
+    }
+    while (offset < bytes.length) {
+      const run = readVarint()
+      cells.fill(readVarint(), cell, cell + run)
+      cell += run
+    }
+    return { ...grid, cells }
+  } catch (error) {
+    console.error('Error fetching photo heatmap:', error)
+    throw error
+  }
+}
+
+/**
+ * Fetch photo counts per capture day or month for the time scrubber
+ * Returns { bucket, buckets: [{ period, count }] }, oldest first; bbox is optional
+ */
+export const fetchTimeline = async (bucket = 'month', bbox, { from, to } = {}) => {
+  try {
+    const response = await apiClient.get('/photos/timeline', {
+      params: { bucket, bbox: bbox ? bbox.join(',') : undefined, from, to },
+    })
+    return response.data
+  } catch (error) {
+    console.error('Error fetching photo timeline:', error)
+    throw error
+  }
+}
+
+/**
+ * Fetch lightweight markers (id, position, thumbnail) for the map
+ * Decodes the columnar, delta-encoded payload into [{ id, latitude, longitude, thumbnailUrl }]
+ */
+export const fetchMarkers = async (bbox) => {
+  try {
+    const response = await apiClient.get('/photos/markers', {
+      params: bbox ? { bbox: bbox.join(',') } : {},
+    })
+    const { count, scale, thumbnailBaseUrl, ids, thumbnails, latitudes, longitudes } = response.data
+    const markers = new Array(count)
+    let lat = 0
+    let lon = 0
+    for (let i = 0; i < count; i++) {
+      lat += latitudes[i]
+      lon += longitudes[i]
+      const thumbnail = thumbnails[i]
+      markers[i] = {
+        id: ids[i],
+        latitude: lat / scale,
+        longitude: lon / scale,
+        thumbnailUrl: thumbnail && !thumbnail.startsWith('/') ? thumbnailBaseUrl + thumbnail : thumbnail,
+      }
+    }
+    return markers
+  } catch (error) {
+    console.error('Error fetching markers:', error)
+    throw error
+  }
+}
+
 /**
  * Fetch all photos
  */
@@ -79,6 +197,22 @@ export const fetchAllPhotos = async () => {
   }
 }
 
+/**
+ * Fetch one page of photos, newest first
+ * Pass the nextCursor of the previous page to continue; returns { photos, nextCursor }
+ */
+export const fetchPhotoPage = async ({ cursor, limit = 50, sort = 'uploadedAt', withGps = false } = {}) => {
+  try {
+    const response = await apiClient.get(withGps ? '/photos/with-gps' : '/photos', {
+      params: { cursor, limit, sort },
+    })
+    return response.data
+  } catch (error) {
+    console.error('Error fetching photo page:', error)
+    throw error
+  }
+}
+
 /**
  * Fetch photo by ID
  */
@@ -92,6 +226,37 @@ export const fetchPhotoById = async (id) => {
   }
 }
 
+/**
+ * Fetch the user's other photos taken closest to a photo
+ * Returns [{ photo, distanceMeters }] ordered by distance
+ */
+export const fetchNearbyPhotos = async (id, k = 10, maxMeters) => {
+  try {
+    const response = await apiClient.get(`/photos/${id}/nearby`, {
+      params: { k, maxMeters },
+    })
+    return response.data
+  } catch (error) {
+    console.error(`Error fetching photos near ${id}:`, error)
+    throw error
+  }
+}
+
+/**
+ * Fetch one sprite sheet with the thumbnails of many photos (e.g. the markers in view)
+ * Returns { url, width, height, sprites: [{ id, x, y, width, height }] };
+ * photos without a thumbnail are missing from sprites
+ */
+export const fetchSprite = async (ids, size = 'marker') => {
+  try {
+    const response = await apiClient.post('/photos/sprites', { ids, size })
+    return response.data
+  } catch (error) {
+    console.error('Error fetching sprite:', error)
+    throw error
+  }
+}
+
 /**
  * Upload a new photo
  */
@@ -115,6 +280,30 @@ export const uploadPhoto = async (file, description = '') => {
   }
 }
 
+/**
+ * Upload many photos in a single request
+ * Returns { accepted, failed, results } with one result per file
+ */
+export const uploadPhotosBatch = async (files, description = '') => {
+  try {
+    const formData = new FormData()
+    files.forEach((file) => formData.append('files', file))
+    if (description) {
+      formData.append('description', description)
+    }
+
+    const response = await apiClient.post('/photos/upload/batch', formData, {
+      headers: {
+        'Content-Type': 'multipart/form-data',
+      },
+    })
+    return response.data
+  } catch (error) {
+    console.error('Error uploading photos:', error)
+    throw error
+  }
+}
+
 /**
  * Delete a photo
  */
@@ -143,12 +332,42 @@ export const updatePhotoLocation = async (id, latitude, longitude) => {
   }
 }
 
+// Must match app.image.resize.sizes on the backend
+const RESIZE_SIZES = [32, 48, 64, 96, 128, 192, 256, 384, 512, 768, 1024, 1536, 2048]
+
+/**
+ * URL of a resized JPEG of a photo image URL, e.g. for retina markers or grids
+ * Sizes are rounded up to the next size the server allows (times devicePixelRatio)
+ */
+export const resizedImageUrl = (url, { width, height, fit, quality } = {}) => {
+  if (!url) return url
+  const ratio = window.devicePixelRatio || 1
+  const allowed = (size) => RESIZE_SIZES.find((s) => s >= size * ratio) ?? RESIZE_SIZES[RESIZE_SIZES.length - 1]
+  const params = new URLSearchParams()
+  if (width) params.set('w', allowed(width))
+  if (height) params.set('h', allowed(height))
+  if (fit) params.set('fit', fit)
+  if (quality) params.set('q', quality)
+  const query = params.toString()
+  return query ? `${url}${url.includes('?') ? '&' : '?'}${query}` : url
+}
+
 export default {
   fetchPhotosWithGps,
+  fetchPhotosWithin,
+  fetchClusters,
+  fetchHeatmap,
+  fetchTimeline,
+  fetchMarkers,
   fetchAllPhotos,
+  fetchPhotoPage,
   fetchPhotoById,
+  fetchNearbyPhotos,
+  fetchSprite,
   uploadPhoto,
+  uploadPhotosBatch,
   deletePhoto,
   updatePhotoLocation,
+  resizedImageUrl,
 }
 